@@ -0,0 +1,42 @@
+package com.kingjoe.orion.jrion;
+
+/*
+ * The string a loop builds in a local with 's = s + x', kept in a builder while the loop runs so each append
+ * doesn't copy everything appended before it, see Optimizer.appendInLoop. The local is only assigned the string
+ * once the loop is done, and strings stay immutable values everywhere else.
+ *
+ * The additions are the ones '+' would make until the value is a string, so the local can start out as anything.
+ * From then on each part adds its text to the builder.
+ */
+final class Appender {
+    private Object value;
+    private StringBuilder text;
+
+    Appender(Object value) {
+        if (value instanceof String string) {
+            text = new StringBuilder(string);
+        } else {
+            this.value = value;
+        }
+    }
+
+    void append(
+            Interpreter interpreter,
+            Token operator,
+            Object part
+    ) {
+        if (text != null) {
+            Operators.appendText(interpreter, text, part);
+            return;
+        }
+        value = Operators.add(interpreter, operator, value, part);
+        if (value instanceof String string) {
+            text = new StringBuilder(string);
+            value = null;
+        }
+    }
+
+    Object value() {
+        return text != null ? text.toString() : value;
+    }
+}
@@ -84,6 +84,21 @@ public class AstPrinter implements Expr.Visitor<String> {
         throw new IllegalStateException("Not implemented");
     }
 
+    @Override
+    public String visitInlineExpression(Expr.Inline expr) {
+        throw new IllegalStateException("Not implemented");
+    }
+
+    @Override
+    public String visitAppendExpression(Expr.Append expr) {
+        throw new IllegalStateException("Not implemented");
+    }
+
+    @Override
+    public String visitHoistedExpression(Expr.Hoisted expr) {
+        throw new IllegalStateException("Not implemented");
+    }
+
     @Override
     public String visitSuperExpression(Expr.Super expr) {
         throw new IllegalStateException("Not implemented");
@@ -0,0 +1,429 @@
+package com.kingjoe.orion.jrion;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Writes the bytes of a class file for the JvmCompiler, with just what a compiled function needs: a constant pool,
+ * and methods whose code only jumps within 32k. The class is version 49, older than stack map frames, so the
+ * verifier infers the types of the locals and the operand stack itself.
+ */
+final class ClassAssembler {
+    private static final int VERSION = 49;
+
+    static final int ACC_FINAL = 0x0010;
+    static final int ACC_SUPER = 0x0020;
+
+    static final int ACONST_NULL = 0x01;
+    static final int ICONST_0 = 0x03;
+    static final int DCONST_0 = 0x0e;
+    static final int BIPUSH = 0x10;
+    static final int SIPUSH = 0x11;
+    static final int LDC2_W = 0x14;
+    static final int ILOAD = 0x15;
+    static final int DLOAD = 0x18;
+    static final int ALOAD = 0x19;
+    static final int AALOAD = 0x32;
+    static final int DSTORE = 0x39;
+    static final int ASTORE = 0x3a;
+    static final int AASTORE = 0x53;
+    static final int POP = 0x57;
+    static final int POP2 = 0x58;
+    static final int DUP = 0x59;
+    static final int DUP_X1 = 0x5a;
+    static final int DUP_X2 = 0x5b;
+    static final int DUP2 = 0x5c;
+    static final int SWAP = 0x5f;
+    static final int DADD = 0x63;
+    static final int DSUB = 0x67;
+    static final int DMUL = 0x6b;
+    static final int DREM = 0x73;
+    static final int DNEG = 0x77;
+    static final int IXOR = 0x82;
+    static final int DCMPL = 0x97;
+    static final int DCMPG = 0x98;
+    static final int IFEQ = 0x99;
+    static final int IFNE = 0x9a;
+    static final int IFLT = 0x9b;
+    static final int IFGE = 0x9c;
+    static final int IFGT = 0x9d;
+    static final int IFLE = 0x9e;
+    static final int GOTO = 0xa7;
+    static final int IFNONNULL = 0xc7;
+    static final int ARETURN = 0xb0;
+    static final int RETURN = 0xb1;
+    static final int GETSTATIC = 0xb2;
+    static final int GETFIELD = 0xb4;
+    static final int INVOKEVIRTUAL = 0xb6;
+    static final int INVOKESPECIAL = 0xb7;
+    static final int INVOKESTATIC = 0xb8;
+    static final int INVOKEINTERFACE = 0xb9;
+    static final int NEW = 0xbb;
+    static final int ANEWARRAY = 0xbd;
+    static final int CHECKCAST = 0xc0;
+
+    private final ByteArrayOutputStream pool = new ByteArrayOutputStream();
+    private final DataOutputStream poolData = new DataOutputStream(pool);
+    private final Map<String, Integer> entries = new HashMap<>();
+    private int poolCount = 1;
+    private final int thisClass;
+    private final int superClass;
+    private final int codeAttribute;
+    private final List<Code> methods = new ArrayList<>();
+
+    static class TooLarge extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TooLarge(String message) {
+            super(message);
+        }
+    }
+
+    ClassAssembler(String name, String superName) {
+        this.thisClass = classEntry(name);
+        this.superClass = classEntry(superName);
+        this.codeAttribute = utf8("Code");
+    }
+
+    Code method(String name, String descriptor) {
+        Code code = new Code(utf8(name), utf8(descriptor), descriptor);
+        methods.add(code);
+        return code;
+    }
+
+    byte[] toByteArray() {
+        for (Code code : methods) {
+            code.finish();
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        try {
+            out.writeInt(0xcafebabe);
+            out.writeShort(0);
+            out.writeShort(VERSION);
+            out.writeShort(poolCount);
+            pool.writeTo(out);
+            out.writeShort(ACC_FINAL | ACC_SUPER);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // no interfaces and no fields
+            out.writeShort(0);
+            out.writeShort(0);
+            out.writeShort(methods.size());
+            for (Code code : methods) {
+                code.write(out);
+            }
+            out.writeShort(0);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private int utf8(String value) {
+        Integer index = entries.get("U" + value);
+        if (index != null) {
+            return index;
+        }
+        return add("U" + value, 1, 1, () -> poolData.writeUTF(value));
+    }
+
+    private int classEntry(String name) {
+        Integer index = entries.get("C" + name);
+        if (index != null) {
+            return index;
+        }
+        int nameIndex = utf8(name);
+        return add("C" + name, 7, 1, () -> poolData.writeShort(nameIndex));
+    }
+
+    private int member(int tag, String owner, String name, String descriptor) {
+        String key = tag + owner + "." + name + descriptor;
+        Integer index = entries.get(key);
+        if (index != null) {
+            return index;
+        }
+        int ownerIndex = classEntry(owner);
+        int nameIndex = utf8(name);
+        int descriptorIndex = utf8(descriptor);
+        String typeKey = "T" + name + descriptor;
+        Integer nameAndType = entries.get(typeKey);
+        if (nameAndType == null) {
+            nameAndType = add(typeKey, 12, 1, () -> {
+                poolData.writeShort(nameIndex);
+                poolData.writeShort(descriptorIndex);
+            });
+        }
+        int typeIndex = nameAndType;
+        return add(key, tag, 1, () -> {
+            poolData.writeShort(ownerIndex);
+            poolData.writeShort(typeIndex);
+        });
+    }
+
+    private int doubleEntry(double value) {
+        long bits = Double.doubleToRawLongBits(value);
+        Integer index = entries.get("D" + bits);
+        if (index != null) {
+            return index;
+        }
+        // a double takes two entries of the pool
+        return add("D" + bits, 6, 2, () -> poolData.writeLong(bits));
+    }
+
+    private interface Entry {
+        void write() throws IOException;
+    }
+
+    private int add(String key, int tag, int size, Entry entry) {
+        if (poolCount + size > 0xffff) {
+            throw new TooLarge("Too many constants in one class.");
+        }
+        int index = poolCount;
+        try {
+            poolData.writeByte(tag);
+            entry.write();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        poolCount += size;
+        entries.put(key, index);
+        return index;
+    }
+
+    /*
+     * words a value of a type takes on the operand stack, and that the arguments of a method descriptor take
+     */
+    private static int size(char type) {
+        return type == 'V' ? 0 : type == 'D' || type == 'J' ? 2 : 1;
+    }
+
+    private static int argumentsSize(String descriptor) {
+        int size = 0;
+        int i = 1;
+        while (descriptor.charAt(i) != ')') {
+            char type = descriptor.charAt(i);
+            size += size(type);
+            while (descriptor.charAt(i) == '[') {
+                i++;
+            }
+            i = descriptor.charAt(i) == 'L' ? descriptor.indexOf(';', i) + 1 : i + 1;
+        }
+        return size;
+    }
+
+    private static int returnSize(String descriptor) {
+        return size(descriptor.charAt(descriptor.indexOf(')') + 1));
+    }
+
+    /*
+     * A position in the code that jumps go to. The operand stack has the same height wherever it's jumped from.
+     */
+    static final class Label {
+        private int position = -1;
+        private int stack = -1;
+        private final List<Integer> jumps = new ArrayList<>();
+    }
+
+    /*
+     * The code of a method. The height of the operand stack is followed instruction by instruction, the code after a
+     * jump, a return or a throw can only be reached through a label and continues with the height of the jumps to it.
+     */
+    final class Code {
+        private final int name;
+        private final int descriptor;
+        private byte[] code = new byte[256];
+        private int length = 0;
+        private int stack = 0;
+        private int maxStack = 0;
+        private int maxLocals;
+        private boolean isReachable = true;
+        private final List<Label> labels = new ArrayList<>();
+
+        private Code(int name, int descriptor, String descriptorText) {
+            this.name = name;
+            this.descriptor = descriptor;
+            // the receiver and the arguments
+            this.maxLocals = 1 + argumentsSize(descriptorText);
+        }
+
+        void op(int opcode, int stackEffect) {
+            write(opcode);
+            adjust(stackEffect);
+            if (opcode == ARETURN || opcode == RETURN || opcode == GOTO) {
+                isReachable = false;
+            }
+        }
+
+        void aload(int local) {
+            local(ALOAD, local, 1);
+        }
+
+        void astore(int local) {
+            local(ASTORE, local, -1);
+        }
+
+        void dload(int local) {
+            local(DLOAD, local, 2);
+        }
+
+        void dstore(int local) {
+            local(DSTORE, local, -2);
+        }
+
+        void iconst(int value) {
+            if (value >= -1 && value <= 5) {
+                op(ICONST_0 + value, 1);
+            } else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+                op(BIPUSH, 1);
+                write(value);
+            } else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+                op(SIPUSH, 1);
+                writeShort(value);
+            } else {
+                throw new TooLarge("Constant out of range.");
+            }
+        }
+
+        void dconst(double value) {
+            if (Double.doubleToRawLongBits(value) == 0) {
+                op(DCONST_0, 2);
+                return;
+            }
+            int index = doubleEntry(value);
+            op(LDC2_W, 2);
+            writeShort(index);
+        }
+
+        void invoke(int opcode, String owner, String name, String descriptor) {
+            int receiver = opcode == INVOKESTATIC ? 0 : 1;
+            int arguments = argumentsSize(descriptor);
+            int index = member(opcode == INVOKEINTERFACE ? 11 : 10, owner, name, descriptor);
+            op(opcode, returnSize(descriptor) - arguments - receiver);
+            writeShort(index);
+            if (opcode == INVOKEINTERFACE) {
+                write(arguments + 1);
+                write(0);
+            }
+        }
+
+        void field(int opcode, String owner, String name, String descriptor) {
+            int index = member(9, owner, name, descriptor);
+            int size = size(descriptor.charAt(0));
+            op(opcode, opcode == GETSTATIC ? size : size - 1);
+            writeShort(index);
+        }
+
+        // NEW, ANEWARRAY and CHECKCAST
+        void type(int opcode, String name) {
+            int index = classEntry(name);
+            op(opcode, opcode == NEW ? 1 : 0);
+            writeShort(index);
+        }
+
+        Label label() {
+            Label label = new Label();
+            labels.add(label);
+            return label;
+        }
+
+        void jump(int opcode, Label label) {
+            int stackEffect = opcode == GOTO ? 0 : -1;
+            adjust(stackEffect);
+            if (label.stack < 0) {
+                label.stack = stack;
+            }
+            label.jumps.add(length);
+            write(opcode);
+            writeShort(0);
+            if (opcode == GOTO) {
+                isReachable = false;
+            }
+        }
+
+        void mark(Label label) {
+            if (!isReachable && label.stack >= 0) {
+                stack = label.stack;
+            } else if (label.stack < 0) {
+                label.stack = stack;
+            }
+            isReachable = true;
+            label.position = length;
+        }
+
+        int length() {
+            return length;
+        }
+
+        private void local(int opcode, int local, int stackEffect) {
+            if (local > 0xff) {
+                throw new TooLarge("Too many locals.");
+            }
+            op(opcode, stackEffect);
+            write(local);
+            maxLocals = Math.max(maxLocals, local + Math.abs(stackEffect));
+        }
+
+        private void adjust(int stackEffect) {
+            stack += stackEffect;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void write(int value) {
+            if (length == code.length) {
+                code = Arrays.copyOf(code, code.length * 2);
+            }
+            code[length++] = (byte) value;
+        }
+
+        private void writeShort(int value) {
+            write(value >> 8);
+            write(value);
+        }
+
+        private void patch(Label label) {
+            if (label.position < 0) {
+                throw new IllegalStateException("Jump to a label that was never marked.");
+            }
+            for (int jump : label.jumps) {
+                int offset = label.position - jump;
+                if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+                    throw new TooLarge("Too much code to jump over.");
+                }
+                code[jump + 1] = (byte) (offset >> 8);
+                code[jump + 2] = (byte) offset;
+            }
+        }
+
+        private void finish() {
+            if (length > 0xffff) {
+                throw new TooLarge("Method too large.");
+            }
+            for (Label label : labels) {
+                patch(label);
+            }
+        }
+
+        private void write(DataOutputStream out) throws IOException {
+            out.writeShort(0);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            out.writeInt(12 + length);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(length);
+            out.write(code, 0, length);
+            // no exception handlers and no attributes
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+}
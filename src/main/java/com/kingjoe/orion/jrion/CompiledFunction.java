@@ -0,0 +1,330 @@
+package com.kingjoe.orion.jrion;
+
+import com.kingjoe.orion.jrion.builtin.RionArray;
+import com.kingjoe.orion.jrion.builtin.RionIndexable;
+import com.kingjoe.orion.jrion.builtin.RionMap;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/*
+ * The body of a function compiled to jvm bytecode by the JvmCompiler, the compiled class extends this one. It is
+ * called with the closure of the RionFunction and the receiver of a method, and keeps the parameters and the locals
+ * of the body in jvm locals instead of a frame.
+ *
+ * The static methods are what the compiled code calls for everything that is more than a few instructions, they take
+ * their operands first, in the order the compiled code has them on its stack.
+ */
+abstract class CompiledFunction {
+    final Interpreter interpreter;
+    // the tokens, caches, cells and literals the compiled code refers to
+    final Object[] constants;
+
+    CompiledFunction(Interpreter interpreter, Object[] constants) {
+        this.interpreter = interpreter;
+        this.constants = constants;
+    }
+
+    /*
+     * a function of up to four parameters has the entry point of its arity, the array entry point is there for every
+     * arity.
+     */
+    Object call0(Environment closure, RionInstance instance, RionClass superClass) {
+        throw new IllegalStateException("no entry point for 0 arguments");
+    }
+
+    Object call1(Environment closure, RionInstance instance, RionClass superClass, Object first) {
+        throw new IllegalStateException("no entry point for 1 argument");
+    }
+
+    Object call2(Environment closure, RionInstance instance, RionClass superClass, Object first, Object second) {
+        throw new IllegalStateException("no entry point for 2 arguments");
+    }
+
+    Object call3(
+            Environment closure,
+            RionInstance instance,
+            RionClass superClass,
+            Object first,
+            Object second,
+            Object third
+    ) {
+        throw new IllegalStateException("no entry point for 3 arguments");
+    }
+
+    Object call4(
+            Environment closure,
+            RionInstance instance,
+            RionClass superClass,
+            Object first,
+            Object second,
+            Object third,
+            Object fourth
+    ) {
+        throw new IllegalStateException("no entry point for 4 arguments");
+    }
+
+    abstract Object call(Environment closure, RionInstance instance, RionClass superClass, Object[] arguments);
+
+    /*
+     * what the properties of a method are looked up from, only 'this' and 'super' of the environment are read
+     */
+    static Environment context(Environment closure, RionInstance instance, RionClass superClass) {
+        return new Environment.Receiver(closure, instance, superClass, 2);
+    }
+
+    static RionCallable callable(Object callee, Interpreter interpreter, Token paren, int argumentCount) {
+        return interpreter.checkCallable(paren, callee, argumentCount);
+    }
+
+    static Object call0(RionCallable callable, Interpreter interpreter, Token paren) {
+        try {
+            return callable.call0(interpreter);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object call1(RionCallable callable, Object first, Interpreter interpreter, Token paren) {
+        try {
+            return callable.call1(interpreter, first);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object call2(RionCallable callable, Object first, Object second, Interpreter interpreter, Token paren) {
+        try {
+            return callable.call2(interpreter, first, second);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object call3(
+            RionCallable callable,
+            Object first,
+            Object second,
+            Object third,
+            Interpreter interpreter,
+            Token paren
+    ) {
+        try {
+            return callable.call3(interpreter, first, second, third);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object call4(
+            RionCallable callable,
+            Object first,
+            Object second,
+            Object third,
+            Object fourth,
+            Interpreter interpreter,
+            Token paren
+    ) {
+        try {
+            return callable.call4(interpreter, first, second, third, fourth);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object call(RionCallable callable, Object[] arguments, Interpreter interpreter, Token paren) {
+        try {
+            return callable.call(interpreter, arguments);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    static Object tailCall(RionCallable callable, Object[] arguments, Interpreter interpreter, Token paren) {
+        return interpreter.tailCall(paren, callable, arguments);
+    }
+
+    /*
+     * 'object.name(...)' looks the method up and checks it before the arguments are evaluated, like the interpreter.
+     * It gives the Property of a method of an instance, which is called with the instance as its receiver, and
+     * the value of any other property, which is called like any other callee.
+     */
+    static Object method(
+            Object object,
+            Interpreter interpreter,
+            Environment context,
+            PropertyCache cache,
+            Token paren,
+            int argumentCount
+    ) {
+        RionClass.Property method = interpreter.methodOf(context, object, cache);
+        if (method != null) {
+            interpreter.checkCallable(paren, method.method(), argumentCount);
+            return method;
+        }
+        return interpreter.checkCallable(paren, interpreter.getProperty(context, object, cache), argumentCount);
+    }
+
+    static Object invoke0(Object object, Object method, Interpreter interpreter, Token paren) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call0(interpreter, (RionInstance) object, property.superClass());
+        }
+        return call0((RionCallable) method, interpreter, paren);
+    }
+
+    static Object invoke1(Object object, Object method, Object first, Interpreter interpreter, Token paren) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call1(interpreter, (RionInstance) object, property.superClass(), first);
+        }
+        return call1((RionCallable) method, first, interpreter, paren);
+    }
+
+    static Object invoke2(
+            Object object,
+            Object method,
+            Object first,
+            Object second,
+            Interpreter interpreter,
+            Token paren
+    ) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call2(interpreter, (RionInstance) object, property.superClass(), first, second);
+        }
+        return call2((RionCallable) method, first, second, interpreter, paren);
+    }
+
+    static Object invoke3(
+            Object object,
+            Object method,
+            Object first,
+            Object second,
+            Object third,
+            Interpreter interpreter,
+            Token paren
+    ) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call3(interpreter, (RionInstance) object, property.superClass(), first, second,
+                                           third);
+        }
+        return call3((RionCallable) method, first, second, third, interpreter, paren);
+    }
+
+    static Object invoke4(
+            Object object,
+            Object method,
+            Object first,
+            Object second,
+            Object third,
+            Object fourth,
+            Interpreter interpreter,
+            Token paren
+    ) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call4(interpreter, (RionInstance) object, property.superClass(), first, second,
+                                           third, fourth);
+        }
+        return call4((RionCallable) method, first, second, third, fourth, interpreter, paren);
+    }
+
+    static Object invoke(Object object, Object method, Object[] arguments, Interpreter interpreter, Token paren) {
+        if (method instanceof RionClass.Property property) {
+            return property.method().call(interpreter, (RionInstance) object, property.superClass(), arguments);
+        }
+        return call((RionCallable) method, arguments, interpreter, paren);
+    }
+
+    // the indexee of 'indexee[index]' is checked before the index is evaluated
+    static Object indexee(Object indexee, Token squareBrace) {
+        if (!(indexee instanceof RionIndexable)) {
+            throw new RuntimeError(squareBrace, "can only index array or map builtin types");
+        }
+        return indexee;
+    }
+
+    static Object assignedIndexee(Object indexee, Token squareBrace) {
+        if (!(indexee instanceof RionIndexable)) {
+            throw new RuntimeError(squareBrace, "Can only index array or map builtin types");
+        }
+        return indexee;
+    }
+
+    // the object of 'object.name = value' is checked before the value is evaluated
+    static Object instance(Object object, Token property) {
+        if (!(object instanceof RionInstance)) {
+            throw new RuntimeError(property, "Only instances have fields.");
+        }
+        return object;
+    }
+
+    /*
+     * a double boxed the way Operators gives numbers: an integer while it is integral, fits an int and is not a
+     * negative zero, a double otherwise
+     */
+    static Object box(double value) {
+        int integer = (int) value;
+        if (integer == value && (integer != 0 || Double.doubleToRawLongBits(value) == 0)) {
+            return integer;
+        }
+        return value;
+    }
+
+    // indexee[index] with an index proven to be a number, an array takes a whole one as an int without boxing it
+    static Object index(Object indexee, double index, Interpreter interpreter, Token squareBrace) {
+        int element = (int) index;
+        if (indexee instanceof RionArray array && element == index) {
+            return array.get(squareBrace, element);
+        }
+        return interpreter.index(squareBrace, indexee, box(index));
+    }
+
+    static void indexAssign(Object indexee, double index, Object value, Interpreter interpreter, Token squareBrace) {
+        int element = (int) index;
+        if (indexee instanceof RionArray array && element == index) {
+            array.set(squareBrace, element, value);
+        } else {
+            interpreter.indexAssign(squareBrace, indexee, box(index), value);
+        }
+    }
+
+    static double divide(double left, double right, Token operator) {
+        if (right == 0) {
+            throw new RuntimeError(operator, "Invalid operation, division by zero.");
+        }
+        return left / right;
+    }
+
+    // Operators.isEqual of two numbers, 0 and -0 are distinct and NaN equals itself
+    static boolean isEqual(double left, double right) {
+        return Double.doubleToLongBits(left) == Double.doubleToLongBits(right);
+    }
+
+    static StringBuilder append(StringBuilder text, Object value, Interpreter interpreter) {
+        Operators.appendText(interpreter, text, value);
+        return text;
+    }
+
+    static Object array(Object[] elements, Interpreter interpreter) {
+        return new RionArray(interpreter, new ArrayList<>(Arrays.asList(elements)));
+    }
+
+    // the keys and values of a map literal in the order they are written, each key followed by its value
+    static Object map(Object[] entries, Interpreter interpreter, Token brace) {
+        List<Object> keys = new ArrayList<>();
+        List<Object> values = new ArrayList<>();
+        for (int i = 0; i < entries.length; i += 2) {
+            keys.add(entries[i]);
+            values.add(entries[i + 1]);
+        }
+        return new RionMap(interpreter, brace, keys, values);
+    }
+
+    // see Expr.Append, the builder is made from the target the first time the loop appends
+    static Appender appender(Object builder, Object target) {
+        return builder == null ? new Appender(target) : (Appender) builder;
+    }
+
+    static Object appended(Object builder, Object target) {
+        return builder == null ? target : ((Appender) builder).value();
+    }
+}
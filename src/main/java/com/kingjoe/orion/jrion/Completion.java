@@ -0,0 +1,10 @@
+package com.kingjoe.orion.jrion;
+
+/*
+ * How a statement finished. Break, continue and return are passed up as a completion by every statement between
+ * them and the loop or call they leave, which is a plain compare at each level instead of unwinding with an
+ * exception. The value of a return is left in Interpreter.returnValue, so completing never allocates.
+ */
+enum Completion {
+    NORMAL, BREAK, CONTINUE, RETURN
+}
@@ -1,75 +1,151 @@
 package com.kingjoe.orion.jrion;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 public class Environment {
-    Map<String, Object> values = new HashMap<>();
-    List<Object> indexedValues = new ArrayList<>(); //for storing local variables
+    // locals are resolved to a slot by the Resolver, only the global environment is looked up by name
+    Object[] slots;
+    // numbers the node engine stores unboxed, the slot of such a local holds NUMBER for a double or INTEGER for an int
+    private double[] numbers;
+    static final Object NUMBER = new Object();
+    static final Object INTEGER = new Object();
+    private int count = 0;
     final Environment enclosing;
 
-    public Environment() {
-        this.enclosing = null;
-    }
-
-    public Environment(Environment enclosing) {
+    /*
+     * size is the number of variables the Resolver counted for the scope, so defining them never has to grow the frame.
+     */
+    public Environment(Environment enclosing, int size) {
         this.enclosing = enclosing;
+        this.slots = new Object[size];
     }
 
     void define(String name, Object value) {
-        values.put(name, value);
-        indexedValues.add(value);
+        if (count == slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(2 * count, 4));
+        }
+        slots[count++] = value;
     }
 
     Object get(Token name) {
-        if (values.containsKey(name.lexeme)) {
-            Object value = values.get(name.lexeme);
-            if (value == null) {
-                throw new RuntimeError(name, "Variable '" + name.lexeme + "' has not been initialized.");
-            }
-            return value;
+        return enclosing.get(name);
+    }
+
+    void assign(Token name, Object value) {
+        enclosing.assign(name, value);
+    }
+
+    public Object getAt(
+            int distance,
+            int index
+    ) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[index];
+        // boxed only now that the number escapes to a reader that wants an object
+        if (value == NUMBER) {
+            return environment.numbers[index];
         }
-        if (enclosing != null) {
-            return enclosing.get(name);
+        if (value == INTEGER) {
+            return (int) environment.numbers[index];
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return value;
     }
 
-    void assign(Token name, Object value) {
-        if (values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
+    void assignAt(Object value, int distance, int index) {
+        ancestor(distance).slots[index] = value;
+    }
+
+    double getNumberAt(int distance, int index) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[index];
+        if (value == NUMBER || value == INTEGER) {
+            return environment.numbers[index];
         }
-        if (enclosing != null) {
-            enclosing.assign(name, value);
-            return;
+        return Node.expectDouble(value);
+    }
+
+    int getIntAt(int distance, int index) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[index];
+        if (value == INTEGER) {
+            return (int) environment.numbers[index];
         }
-        throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        return Node.expectInt(value == NUMBER ? (Object) environment.numbers[index] : value);
     }
 
-    public Object getAt(
-            Token name,
-            int distance
-    ) {
-        return ancestor(distance).values.get(name.lexeme);
+    void assignNumberAt(double value, int distance, int index) {
+        ancestor(distance).store(index, value, NUMBER);
     }
 
-    public Object getAt(
-            int distance,
-            int index
-    ) {
-        return ancestor(distance).indexedValues.get(index);
+    void assignIntAt(int value, int distance, int index) {
+        ancestor(distance).store(index, value, INTEGER);
     }
 
-    void assignAt(Token name, Object value, int distance) {
-        ancestor(distance).values.put(name.lexeme, value);
+    /*
+     * adds amount to a local holding an unboxed number in place, false when it holds anything else or the integer it
+     * holds would overflow, the caller then adds the generic way
+     */
+    boolean addAt(int amount, int distance, int index) {
+        Environment environment = ancestor(distance);
+        Object value = environment.slots[index];
+        if (value == INTEGER) {
+            long result = (long) environment.numbers[index] + amount;
+            if (result != (int) result) {
+                return false;
+            }
+            environment.numbers[index] = result;
+            return true;
+        }
+        if (value == NUMBER) {
+            environment.numbers[index] += amount;
+            return true;
+        }
+        return false;
     }
 
-    void assignAt(Token name, Object value, int distance, int index) {
-        ancestor(distance).values.put(name.lexeme, value);
-        ancestor(distance).indexedValues.set(index, value);
+    // stores a number computed by a generic operator unboxed, so the node that computed it finds it that way next time
+    void assignUnboxedAt(Object value, int distance, int index) {
+        if (value instanceof Integer integer) {
+            assignIntAt(integer, distance, index);
+        } else if (value instanceof Double number) {
+            assignNumberAt(number, distance, index);
+        } else {
+            assignAt(value, distance, index);
+        }
+    }
+
+    private void store(int index, double value, Object marker) {
+        if (numbers == null) {
+            numbers = new double[slots.length];
+        } else if (numbers.length <= index) {
+            numbers = Arrays.copyOf(numbers, slots.length);
+        }
+        numbers[index] = value;
+        slots[index] = marker;
+    }
+
+    /*
+     * 'this' of the innermost method the environment belongs to, it is in the first slot of the method's frame,
+     * followed by 'super' when the class has a superclass.
+     */
+    Object receiver() {
+        Environment environment = receiverEnvironment();
+        return environment == null ? null : environment.slots[0];
+    }
+
+    Object superClass() {
+        Environment environment = receiverEnvironment();
+        return environment == null ? null : environment.slots[1];
+    }
+
+    private Environment receiverEnvironment() {
+        Environment environment = this;
+        while (environment != null && !(environment instanceof Receiver)) {
+            environment = environment.enclosing;
+        }
+        return environment;
     }
 
     private Environment ancestor(int distance) {
@@ -79,4 +155,113 @@ public class Environment {
         }
         return environment;
     }
+
+    /*
+     * Table of global variables. The Resolver hands every global name a cell the first time it sees it, so a
+     * reference to a function declared further down or redefined in a later repl line shares the cell of the
+     * definition, and reading or writing a global at runtime is a single field access on the cell.
+     */
+    static class Globals extends Environment {
+        private final Map<String, Cell> cells = new HashMap<>();
+
+        Globals() {
+            super(null, 0);
+        }
+
+        Cell cell(String name) {
+            return cells.computeIfAbsent(name, key -> new Cell());
+        }
+
+        @Override
+        void define(String name, Object value) {
+            cell(name).value = value;
+        }
+
+        @Override
+        Object get(Token name) {
+            return cell(name.lexeme).get(name);
+        }
+
+        @Override
+        void assign(Token name, Object value) {
+            cell(name.lexeme).assign(name, value);
+        }
+    }
+
+    static final class Cell {
+        // held by a cell that has been handed out to a reference but whose variable was never defined
+        private static final Object UNDEFINED = new Object();
+        Object value = UNDEFINED;
+        // the value while it is an unboxed number, in which case value holds NUMBER or INTEGER
+        private double number;
+
+        Object get(Token name) {
+            Object value = this.value;
+            if (value == NUMBER) {
+                return number;
+            }
+            if (value == INTEGER) {
+                return (int) number;
+            }
+            if (value == null || value == UNDEFINED) {
+                throw unavailable(name, value);
+            }
+            return value;
+        }
+
+        double getNumber(Token name) {
+            if (value == NUMBER || value == INTEGER) {
+                return number;
+            }
+            return Node.expectDouble(get(name));
+        }
+
+        int getInt(Token name) {
+            if (value == INTEGER) {
+                return (int) number;
+            }
+            return Node.expectInt(get(name));
+        }
+
+        void assign(Token name, Object value) {
+            if (this.value == UNDEFINED) {
+                throw unavailable(name, UNDEFINED);
+            }
+            this.value = value;
+        }
+
+        void assignNumber(Token name, double number) {
+            if (this.value == UNDEFINED) {
+                throw unavailable(name, UNDEFINED);
+            }
+            this.number = number;
+            this.value = NUMBER;
+        }
+
+        void assignInt(Token name, int number) {
+            if (this.value == UNDEFINED) {
+                throw unavailable(name, UNDEFINED);
+            }
+            this.number = number;
+            this.value = INTEGER;
+        }
+
+        private static RuntimeError unavailable(Token name, Object value) {
+            if (value == null) {
+                return new RuntimeError(name, "Variable '" + name.lexeme + "' has not been initialized.");
+            }
+            return new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
+        }
+    }
+
+    /*
+     * frame of a method call, 'this' and 'super' take the first two slots ahead of the parameters and locals.
+     */
+    static class Receiver extends Environment {
+        Receiver(Environment enclosing, RionInstance instance, RionClass superClass, int size) {
+            super(enclosing, size);
+            define("this", instance);
+            define("super", superClass);
+        }
+    }
 }
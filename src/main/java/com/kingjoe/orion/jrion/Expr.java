@@ -1,15 +1,39 @@
 package com.kingjoe.orion.jrion;
 
+import com.kingjoe.orion.jrion.builtin.RionArray;
+
 import java.util.List;
 
 public abstract class Expr {
 
+    // the type the TypeInference proved the value has, null until it is inferred
+    TypeInference.Type type;
+
     abstract <E> E accept(Visitor<E> visitor);
 
+    /*
+     * An expression naming a variable. The Resolver writes down where the variable lives once: the cell of a global,
+     * or for a local the number of scopes to walk up and its slot in that scope.
+     */
+    public static abstract class Reference extends Expr {
+        Environment.Cell cell;
+        int depth;
+        int slot;
+
+        Reference() {
+        }
+
+        boolean isGlobal() {
+            return cell != null;
+        }
+    }
+
     public static class Binary extends Expr {
         final Expr left;
         final Token operator;
         final Expr right;
+        // NUMBER when both operands are proven numbers, STRING for a '+' with a proven string, set by TypeInference
+        TypeInference.Type operands;
 
         Binary(
                 Expr left,
@@ -74,7 +98,7 @@ public abstract class Expr {
         }
     }
 
-    public static class This extends Expr {
+    public static class This extends Reference {
         final Token keyword;
 
         public This(Token keyword) {
@@ -109,7 +133,7 @@ public abstract class Expr {
      * A variable usage refers to the preceding declaration of that variable
      * in the innermost scope that encloses the expression where the variable is used.
      */
-    public static class Variable extends Expr {
+    public static class Variable extends Reference {
         final Token name;
 
         Variable(Token name) {
@@ -122,7 +146,7 @@ public abstract class Expr {
         }
     }
 
-    public static class Assign extends Expr {
+    public static class Assign extends Reference {
         final Token name;
         final Expr value;
 
@@ -169,6 +193,8 @@ public abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+        // the callee last called here, already checked to be callable with as many arguments as the call passes
+        RionCallable checkedCallee;
 
         public Call(
                 Expr callee,
@@ -210,6 +236,7 @@ public abstract class Expr {
     public static class Get extends Expr {
         final Expr object;
         final Token property;
+        final PropertyCache cache;
 
         public Get(
                 Expr object,
@@ -217,6 +244,7 @@ public abstract class Expr {
         ) {
             this.object = object;
             this.property = property;
+            this.cache = new PropertyCache(property);
         }
 
         @Override
@@ -229,6 +257,7 @@ public abstract class Expr {
         final Expr object;
         final Token property;
         final Expr value;
+        final PropertyCache cache;
 
         public Set(
                 Expr object,
@@ -238,6 +267,7 @@ public abstract class Expr {
             this.object = object;
             this.property = property;
             this.value = value;
+            this.cache = new PropertyCache(property);
         }
 
         @Override
@@ -247,9 +277,13 @@ public abstract class Expr {
     }
 
     public static class AnonFunc extends Expr {
+        private static final Token ANONYMOUS = new Token(TokenType.IDENTIFIER, "anonymous", null, -1);
+
         final Token paren;
         final List<Token> parameters;
         final Stmt body;
+        // every evaluation of the expression shares one declaration, so compiled code and call counts stick to it
+        final Stmt.Function declaration;
 
         public AnonFunc(
                 Token paren,
@@ -259,6 +293,7 @@ public abstract class Expr {
             this.paren = paren;
             this.parameters = parameters;
             this.body = body;
+            this.declaration = new Stmt.Function(ANONYMOUS, parameters, body);
         }
 
         @Override
@@ -336,6 +371,104 @@ public abstract class Expr {
         }
     }
 
+    /*
+     * A call of a global function whose body the Optimizer copied into the call site. While the global still holds
+     * the function, the arguments go to slots of the current scope, starting at slot, and body reads them from
+     * there in place of the parameters. Once the global holds anything else, the call runs as it is.
+     */
+    public static class Inline extends Expr {
+        final Call call;
+        final Environment.Cell cell;
+        final Stmt.Function function;
+        final int slot;
+        final Expr body;
+
+        Inline(
+                Call call,
+                Stmt.Function function,
+                int slot,
+                Expr body
+        ) {
+            this.call = call;
+            this.cell = ((Variable) call.callee).cell;
+            this.function = function;
+            this.slot = slot;
+            this.body = body;
+        }
+
+        boolean isInlined() {
+            return cell.value instanceof RionFunction callee && callee.isDeclaredBy(function);
+        }
+
+        @Override
+        <E> E accept(Visitor<E> visitor) {
+            return visitor.visitInlineExpression(this);
+        }
+    }
+
+    /*
+     * 'target = target + parts[0] + parts[1] ...' in a loop the Optimizer builds the target of in an Appender. The
+     * Appender is made from the target the first time the loop appends, and kept in the builder slot. With no parts
+     * it is the value the target is assigned once the loop is done, the target itself when nothing was appended.
+     */
+    public static class Append extends Expr {
+        final Variable target;
+        final Variable builder;
+        // the '+' adding each part
+        final List<Token> operators;
+        final List<Expr> parts;
+
+        Append(
+                Variable target,
+                Variable builder,
+                List<Token> operators,
+                List<Expr> parts
+        ) {
+            this.target = target;
+            this.builder = builder;
+            this.operators = operators;
+            this.parts = parts;
+        }
+
+        @Override
+        <E> E accept(Visitor<E> visitor) {
+            return visitor.visitAppendExpression(this);
+        }
+    }
+
+    /*
+     * An expression in a loop that gives the same value on every pass, which the Optimizer keeps in the hoisted slot
+     * the first time it is evaluated. The slot is cleared before the loop, so the value is computed where it would
+     * first have been, and is only kept when it is a number or a boolean, never a string or an array whose text can
+     * follow elements the loop changes. receiver is set for 'receiver.length()', which is only kept for an array,
+     * since an array never changes its length while an instance's length method may return anything.
+     */
+    public static class Hoisted extends Expr {
+        final Expr value;
+        final Variable hoisted;
+        final Variable receiver;
+
+        Hoisted(
+                Expr value,
+                Variable hoisted,
+                Variable receiver
+        ) {
+            this.value = value;
+            this.hoisted = hoisted;
+            this.receiver = receiver;
+        }
+
+        static boolean keeps(Object value, Object receiver) {
+            return (value instanceof Integer || value instanceof Double || value instanceof Boolean)
+                    && (receiver == null || receiver instanceof RionArray);
+        }
+
+        @Override
+        <E> E accept(Visitor<E> visitor) {
+            return visitor.visitHoistedExpression(this);
+        }
+    }
+
     interface Visitor<T> {
         T visitBinaryExpression(Binary expr);
         T visitLogicalExpression(Logical expr);
@@ -353,6 +486,9 @@ public abstract class Expr {
         T visitAnonFunctionExpression(AnonFunc expr);
         T visitArrayExpression(Array expr);
         T visitMapExpression(Map expr);
+        T visitInlineExpression(Inline expr);
+        T visitAppendExpression(Append expr);
+        T visitHoistedExpression(Hoisted expr);
         T visitSuperExpression(Super expr);
     }
 }
@@ -7,16 +7,21 @@ import com.kingjoe.orion.jrion.builtin.RionMap;
 import java.util.*;
 
 public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
-    Environment globals = new Environment();
+    final Environment.Globals globals = new Environment.Globals();
     Environment environment = globals;
-    Map<Expr, VariableInfo> locals = new HashMap<>();
+    // number of calls after which a function is compiled to jvm bytecode, never when 0
+    int hotCallThreshold = 0;
+    // value of the return statement whose RETURN completion is on its way out to the enclosing call
+    Object returnValue;
+    // returned by a function in place of a value when it ended in a call to tailCallee, see RionFunction.call
+    static final Object TAIL_CALL = new Object();
+    RionFunction tailCallee;
+    Object[] tailArguments;
 
     public Interpreter() {
         NativeFunction.load(globals);
     }
 
-    public record VariableInfo(int depth, int index){}
-
     public void interpret(List<Stmt> statements) {
         try {
             for (Stmt stmt : statements) {
@@ -42,79 +47,91 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitBinaryExpression(Expr.Binary expr) {
+        if (expr.operands == TypeInference.Type.STRING) {
+            StringBuilder text = new StringBuilder();
+            concatenate(expr, text);
+            return text.toString();
+        }
         Object left = evaluate(expr.left);
         Object right = evaluate(expr.right);
+        if (expr.operands == TypeInference.Type.NUMBER) {
+            return numberOperation(expr.operator, left, right);
+        }
 
         switch (expr.operator.type) {
             case MINUS -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left - (double) right;
+                return Operators.subtract(expr.operator, left, right);
             }
             case SLASH -> {
-                checkNumberOperand(expr.operator, left, right);
-                if ((double) right == 0) {
-                    throw new RuntimeError(expr.operator, "Invalid operation, division by zero.");
-                }
-                return (double) left / (double) right;
+                return Operators.divide(expr.operator, left, right);
             }
             case MODULO -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left % (double) right;
+                return Operators.modulo(expr.operator, left, right);
             }
             case GREATER -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left > (double) right;
+                return Operators.greater(expr.operator, left, right);
             }
             case GREATER_EQUAL -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left >= (double) right;
+                return Operators.greaterEqual(expr.operator, left, right);
             }
             case LESS -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left < (double) right;
+                return Operators.less(expr.operator, left, right);
             }
             case LESS_EQUAL -> {
-                checkNumberOperand(expr.operator, left, right);
-                return (double) left <= (double) right;
+                return Operators.lessEqual(expr.operator, left, right);
             }
             case BANG_EQUAL -> {
-                return !isEqual(left, right);
+                return !Operators.isEqual(left, right);
             }
             case EQUAL_EQUAL -> {
-                return isEqual(left, right);
+                return Operators.isEqual(left, right);
             }
             case STAR -> {
-                if (isNumber(left) && isNumber(right)) {
-                    return (double) left * (double) right;
-                }
-                if (isString(left) && isWholeNumber(right)) {
-                    int count = Integer.parseInt(stringify(right));
-                    return ((String) left).repeat(count);
-                }
-                if (left instanceof RionArray array && isWholeNumber(right)) {
-                    return initializedFixedSizeArray(expr.operator, array, right);
-                }
-                throw new RuntimeError(expr.operator, "cannot perform '*' operation on the provided type");
+                return Operators.multiply(this, expr.operator, left, right);
             }
             case PLUS -> {
-                if (isNumber(left) && isNumber(right)) {
-                    return (double) left + (double) right;
-                }
-                if (isString(left) && isString(right)) {
-                    return left.toString() + right;
-                }
-                if (isString(left)) {
-                    return left + stringify(right);
-                }
-                if (isString(right)) {
-                    return stringify(left) + right;
-                }
-                throw new RuntimeError(expr.operator, "cannot perform  '+' operation on the provided type");
+                return Operators.add(this, expr.operator, left, right);
             }
         }
         return null;
     }
 
+    /*
+     * a chain of '+' that a proven string runs through is built in a single builder, adding the text of each
+     * operand in the order the chain would have
+     */
+    private void concatenate(Expr expr, StringBuilder text) {
+        if (expr instanceof Expr.Binary binary && binary.operands == TypeInference.Type.STRING) {
+            concatenate(binary.left, text);
+            Operators.appendText(this, text, evaluate(binary.right));
+        } else {
+            Operators.appendText(this, text, evaluate(expr));
+        }
+    }
+
+    /*
+     * Operands the TypeInference proved to be numbers skip the type checks. Integers take the int arithmetic of
+     * Operators, which allocates no Double, and no Integer for a result the Integer cache holds. Numbers stay boxed
+     * here: computing nested arithmetic as unboxed doubles measured slower in this walker, even with '%' kept on
+     * ints. Unboxed values live in the node engine and in the jvm locals of compiled functions.
+     */
+    private static Object numberOperation(Token operator, Object left, Object right) {
+        return switch (operator.type) {
+            case MINUS -> Operators.subtractNumbers(left, right);
+            case SLASH -> Operators.divideNumbers(operator, left, right);
+            case MODULO -> Operators.moduloNumbers(left, right);
+            case GREATER -> Operators.greaterNumbers(left, right);
+            case GREATER_EQUAL -> Operators.greaterEqualNumbers(left, right);
+            case LESS -> Operators.lessNumbers(left, right);
+            case LESS_EQUAL -> Operators.lessEqualNumbers(left, right);
+            case BANG_EQUAL -> !Operators.isEqual(left, right);
+            case EQUAL_EQUAL -> Operators.isEqual(left, right);
+            case STAR -> Operators.multiplyNumbers(left, right);
+            case PLUS -> Operators.addNumbers(left, right);
+            default -> null;
+        };
+    }
+
     @Override
     public Object visitLogicalExpression(Expr.Logical expr) {
         switch (expr.operator.type) {
@@ -150,8 +167,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
                 return !isTruthy(expr.right);
             }
             case MINUS -> {
-                Object right = evaluate(expr.right);
-                return -(double) right;
+                return Operators.negate(evaluate(expr.right));
             }
         }
         return null;
@@ -162,25 +178,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return lookupVariable(expr.name, expr);
     }
 
-    private Object lookupVariable(Token name, Expr expr) {
-        VariableInfo variableInfo = locals.get(expr);
-        if (variableInfo != null) {
-            //return environment.get(expr.name); //look up variables by key in map
-            return environment.getAt(variableInfo.depth, variableInfo.index);
+    private Object lookupVariable(Token name, Expr.Reference expr) {
+        if (expr.isGlobal()) {
+            return expr.cell.get(name);
         } else {
-            return globals.get(name);
+            //return environment.get(expr.name); //look up variables by key in map
+            return environment.getAt(expr.depth, expr.slot);
         }
     }
 
     @Override
     public Object visitAssignExpression(Expr.Assign expr) {
         Object value = evaluate(expr.value);
-        VariableInfo variableInfo = locals.get(expr);
-        if (variableInfo != null) {
-            //environment.assign(expr.name, value); //look up variables by key in map and assign value
-            environment.assignAt(expr.name, value, variableInfo.depth, variableInfo.index); //look up local variables by index
+        if (expr.isGlobal()) {
+            expr.cell.assign(expr.name, value);
         } else {
-            globals.assign(expr.name, value);
+            //environment.assign(expr.name, value); //look up variables by key in map and assign value
+            environment.assignAt(value, expr.depth, expr.slot); //look up local variables by index
         }
         return value;
     }
@@ -188,78 +202,274 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitIndexAssignExpression(Expr.IndexAssign expr) {
         Object indexee = evaluate(expr.indexee);
-        if (!(indexee instanceof RionIndexable indexable)) {
+        if (!(indexee instanceof RionIndexable)) {
             throw new RuntimeError(expr.squareBrace, "Can only index array or map builtin types");
         }
         Object index = evaluate(expr.index);
         Object value = evaluate(expr.value);
 
-        indexable.set(expr.squareBrace, index, value);
+        indexAssign(expr.squareBrace, indexee, index, value);
         return null;
     }
 
+    void indexAssign(
+            Token squareBrace,
+            Object indexee,
+            Object index,
+            Object value
+    ) {
+        if (!(indexee instanceof RionIndexable indexable)) {
+            throw new RuntimeError(squareBrace, "Can only index array or map builtin types");
+        }
+        indexable.set(squareBrace, index, value);
+    }
+
     @Override
     public Object visitCallExpression(Expr.Call expr) {
-        Object callee = evaluate(expr.callee);
-        if (!(callee instanceof RionCallable callable)) {
-            throw new RuntimeError(expr.paren, "Can only call functions and classes");
+        if (expr.callee instanceof Expr.Get get) {
+            return invokeMethod(expr, get);
         }
+        RionCallable callable = checkCallee(expr, evaluate(expr.callee));
+        return call(expr, callable);
+    }
 
-        // checking for no of args passed at runtime is costly, should we attempt to adopt smalltalk approach of
-        // looking up func name based on the no of args passed?
-        if (expr.arguments.size() != callable.getArity()) {
-            throw new RuntimeError(expr.paren, "Expected " + callable.getArity() + " arguments, but got " + expr.arguments.size());
+    /*
+     * checkCallable for a call site. A site mostly calls the same callee, the one that passed last is remembered
+     * and not checked again.
+     */
+    private RionCallable checkCallee(
+            Expr.Call expr,
+            Object callee
+    ) {
+        if (callee == expr.checkedCallee) {
+            return expr.checkedCallee;
         }
+        RionCallable callable = checkCallable(expr.paren, callee, expr.arguments.size());
+        expr.checkedCallee = callable;
+        return callable;
+    }
 
-        List<Object> arguments = new ArrayList<>();
-        for (Expr arg : expr.arguments) {
-            arguments.add(evaluate(arg));
+    private Object call(
+            Expr.Call expr,
+            RionCallable callable
+    ) {
+        List<Expr> arguments = expr.arguments;
+        try {
+            return switch (arguments.size()) {
+                case 0 -> callable.call0(this);
+                case 1 -> callable.call1(this, evaluate(arguments.get(0)));
+                case 2 -> callable.call2(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+                case 3 -> callable.call3(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+                                         evaluate(arguments.get(2)));
+                case 4 -> callable.call4(this, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+                                         evaluate(arguments.get(2)), evaluate(arguments.get(3)));
+                default -> callable.call(this, evaluateAll(arguments));
+            };
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(expr.paren);
         }
+    }
 
-        return callable.call(this, arguments);
+    @Override
+    public Object visitInlineExpression(Expr.Inline expr) {
+        if (!expr.isInlined()) {
+            return visitCallExpression(expr.call);
+        }
+        List<Expr> arguments = expr.call.arguments;
+        for (int i = 0; i < arguments.size(); i++) {
+            environment.assignAt(evaluate(arguments.get(i)), 0, expr.slot + i);
+        }
+        return evaluate(expr.body);
+    }
+
+    @Override
+    public Object visitAppendExpression(Expr.Append expr) {
+        Object builder = evaluate(expr.builder);
+        if (expr.parts.isEmpty()) {
+            return builder == null ? evaluate(expr.target) : ((Appender) builder).value();
+        }
+        Appender appender = (Appender) builder;
+        if (appender == null) {
+            appender = new Appender(evaluate(expr.target));
+            environment.assignAt(appender, expr.builder.depth, expr.builder.slot);
+        }
+        for (int i = 0; i < expr.parts.size(); i++) {
+            appender.append(this, expr.operators.get(i), evaluate(expr.parts.get(i)));
+        }
+        return null;
+    }
+
+    @Override
+    public Object visitHoistedExpression(Expr.Hoisted expr) {
+        Object hoisted = evaluate(expr.hoisted);
+        if (hoisted != null) {
+            return hoisted;
+        }
+        Object value = evaluate(expr.value);
+        if (Expr.Hoisted.keeps(value, expr.receiver == null ? null : evaluate(expr.receiver))) {
+            environment.assignAt(value, expr.hoisted.depth, expr.hoisted.slot);
+        }
+        return value;
+    }
+
+    private Object[] evaluateAll(List<Expr> exprs) {
+        Object[] values = new Object[exprs.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = evaluate(exprs.get(i));
+        }
+        return values;
+    }
+
+    /*
+     * a call of 'object.name(...)', a method of an instance is called with the instance as its receiver and only
+     * becomes a bound method when it is taken as a value. Any other property is called like any other callee.
+     */
+    private Object invokeMethod(
+            Expr.Call expr,
+            Expr.Get callee
+    ) {
+        Object object = evaluate(callee.object);
+        RionClass.Property method = methodOf(environment, object, callee.cache);
+        Object function = method == null ? getProperty(environment, object, callee.cache) : method.method();
+        RionCallable callable = checkCallee(expr, function);
+
+        if (method == null) {
+            return call(expr, callable);
+        }
+        RionFunction invoked = method.method();
+        RionInstance receiver = (RionInstance) object;
+        RionClass superClass = method.superClass();
+        List<Expr> arguments = expr.arguments;
+        return switch (arguments.size()) {
+            case 0 -> invoked.call0(this, receiver, superClass);
+            case 1 -> invoked.call1(this, receiver, superClass, evaluate(arguments.get(0)));
+            case 2 -> invoked.call2(this, receiver, superClass, evaluate(arguments.get(0)), evaluate(arguments.get(1)));
+            case 3 -> invoked.call3(this, receiver, superClass, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+                                    evaluate(arguments.get(2)));
+            case 4 -> invoked.call4(this, receiver, superClass, evaluate(arguments.get(0)), evaluate(arguments.get(1)),
+                                    evaluate(arguments.get(2)), evaluate(arguments.get(3)));
+            default -> invoked.call(this, receiver, superClass, evaluateAll(arguments));
+        };
+    }
+
+    RionClass.Property methodOf(
+            Environment environment,
+            Object object,
+            PropertyCache cache
+    ) {
+        return object instanceof RionInstance instance ? cache.method(environment, instance) : null;
+    }
+
+    private Object visitTailCall(Expr.Call expr) {
+        RionCallable callable = checkCallee(expr, evaluate(expr.callee));
+        return tailCall(expr.paren, callable, evaluateAll(expr.arguments));
+    }
+
+    /*
+     * A call in tail position of a function. A Rion function is not called here but handed back to the
+     * RionFunction.call that is about to return, which runs it in its own loop once the caller's frame is gone.
+     */
+    Object tailCall(Token paren, RionCallable callable, Object[] arguments) {
+        if (callable instanceof RionFunction function) {
+            tailCallee = function;
+            tailArguments = arguments;
+            return TAIL_CALL;
+        }
+        try {
+            return callable.call(this, arguments);
+        } catch (NativeMethod.ArgumentError error) {
+            throw error.at(paren);
+        }
+    }
+
+    RionCallable checkCallable(
+            Token paren,
+            Object callee,
+            int argumentCount
+    ) {
+        if (!(callee instanceof RionCallable callable)) {
+            throw new RuntimeError(paren, "Can only call functions and classes");
+        }
+
+        // checking for no of args passed at runtime is costly, should we attempt to adopt smalltalk approach of
+        // looking up func name based on the no of args passed?
+        if (argumentCount != callable.getArity()) {
+            throw new RuntimeError(paren, "Expected " + callable.getArity() + " arguments, but got " + argumentCount);
+        }
+        return callable;
     }
 
     @Override
     public Object visitIndexingExpression(Expr.Indexing expr) {
         Object indexee = evaluate(expr.indexee);
-        if (!(indexee instanceof RionIndexable indexable)) {
+        if (!(indexee instanceof RionIndexable)) {
             throw new RuntimeError(expr.squareBrace, "can only index array or map builtin types");
         }
 
         Object index = evaluate(expr.index);
 
-        return indexable.get(expr.squareBrace, index);
+        return index(expr.squareBrace, indexee, index);
+    }
+
+    Object index(
+            Token squareBrace,
+            Object indexee,
+            Object index
+    ) {
+        if (!(indexee instanceof RionIndexable indexable)) {
+            throw new RuntimeError(squareBrace, "can only index array or map builtin types");
+        }
+        return indexable.get(squareBrace, index);
     }
 
     @Override
     public Object visitGetExpression(Expr.Get expr) {
-        Object object = evaluate(expr.object);
+        return getProperty(environment, evaluate(expr.object), expr.cache);
+    }
+
+    Object getProperty(
+            Environment environment,
+            Object object,
+            PropertyCache cache
+    ) {
+        Token property = cache.name;
         if (object instanceof RionInstance instance) {
-            return instance.get(environment, expr.property);
+            return cache.get(environment, instance);
         }
         if (object instanceof RionArray array) {
-            return array.getProperty(expr.property, expr.property.lexeme);
+            return array.getProperty(property, property.lexeme);
         }
         if (object instanceof RionMap map) {
-            return map.getProperty(expr.property, expr.property.lexeme);
+            return map.getProperty(property, property.lexeme);
         }
 
-        throw new RuntimeError(expr.property, "Only instances have properties.");
+        throw new RuntimeError(property, "Only instances have properties.");
     }
 
     @Override
     public Object visitSetExpression(Expr.Set expr) {
-        if (!(evaluate(expr.object) instanceof RionInstance instance)) {
+        Object object = evaluate(expr.object);
+        if (!(object instanceof RionInstance)) {
             throw new RuntimeError(expr.property, "Only instances have fields.");
         }
-        return instance.set(environment, expr.property, evaluate(expr.value));
+        return setProperty(environment, object, expr.cache, evaluate(expr.value));
+    }
+
+    Object setProperty(
+            Environment environment,
+            Object object,
+            PropertyCache cache,
+            Object value
+    ) {
+        if (!(object instanceof RionInstance instance)) {
+            throw new RuntimeError(cache.name, "Only instances have fields.");
+        }
+        return cache.set(environment, instance, value);
     }
 
     @Override
     public Object visitAnonFunctionExpression(Expr.AnonFunc expr) {
-        Token name = new Token(TokenType.IDENTIFIER, "anonymous", null, -1);
-        Stmt.Function stmt = new Stmt.Function(name, expr.parameters, expr.body);
-        return new RionFunction(stmt, environment, "fn");
+        return new RionFunction(expr.declaration, environment, "fn");
     }
 
     @Override
@@ -286,34 +496,47 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitSuperExpression(Expr.Super expr) {
-        RionClass superClass = (RionClass) environment.get(new Token(TokenType.THIS, "super", "super", 0));
-        RionInstance rionInstance = (RionInstance) environment.get(new Token(TokenType.THIS, "this", "this", 0));
-
         if (expr.method != null) {
-            AbstractMap.SimpleImmutableEntry<RionFunction, RionClass> methodRes = superClass.findMethod(environment, expr.method);
-            if (methodRes != null) {
-                return methodRes.getKey().bind(rionInstance, methodRes.getValue());
-            }
-
-            throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'");
+            return superMethod(environment, expr);
         } else if (expr.arguments != null) {
-            //we only allow access to the initializer of the immediate parent class when super(args*) is called.
-            Optional<RionFunction> initializer = superClass.getClassInitializer();
-            if (initializer.isPresent()) {
-                List<Object> args = new ArrayList<>();
-                for (Expr argExpr : expr.arguments) {
-                    args.add(evaluate(argExpr));
-                }
-
-                return initializer.get().bind(rionInstance, superClass).call(this, args);
-            } else {
-                throw new RuntimeError(expr.keyword, "Superclass does not have an initializer.");
-            }
+            return superInitialize(environment, expr, evaluateAll(expr.arguments));
         }
 
         return null;
     }
 
+    Object superMethod(
+            Environment environment,
+            Expr.Super expr
+    ) {
+        RionClass superClass = (RionClass) environment.superClass();
+        RionInstance rionInstance = (RionInstance) environment.receiver();
+
+        RionClass.Property method = superClass.findMethod(environment, expr.method);
+        if (method != null) {
+            return method.method().bind(rionInstance, method.superClass());
+        }
+
+        throw new RuntimeError(expr.method, "Undefined property '" + expr.method.lexeme + "'");
+    }
+
+    Object superInitialize(
+            Environment environment,
+            Expr.Super expr,
+            Object[] arguments
+    ) {
+        RionClass superClass = (RionClass) environment.superClass();
+        RionInstance rionInstance = (RionInstance) environment.receiver();
+
+        //we only allow access to the initializer of the immediate parent class when super(args*) is called.
+        RionFunction initializer = superClass.getInitializer();
+        if (initializer != null) {
+            return initializer.call(this, rionInstance, superClass, arguments);
+        } else {
+            throw new RuntimeError(expr.keyword, "Superclass does not have an initializer.");
+        }
+    }
+
     @Override
     public Object visitExpressionStmt(Stmt.Expression stmt) {
         return evaluate(stmt.expression);
@@ -331,17 +554,28 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitClassStmt(Stmt.Class stmt) {
+        Object superClass = null;
+        if (stmt.superClass != null) {
+            superClass = evaluate(stmt.superClass);
+        }
+        declareClass(environment, stmt, superClass);
+        return null;
+    }
+
+    void declareClass(
+            Environment environment,
+            Stmt.Class stmt,
+            Object superClassValue
+    ) {
         RionClass superClass = null;
         if (stmt.superClass != null) {
-            if (evaluate(stmt.superClass) instanceof RionClass rionSuperClass) {
+            if (superClassValue instanceof RionClass rionSuperClass) {
                 superClass = rionSuperClass;
             } else {
                 throw new RuntimeError(stmt.superClass.name, "Superclass must be a class");
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
-
         Set<String> fields = new HashSet<>();
         for (Stmt.Var varStmt : stmt.fields) {
             fields.add(varStmt.name.lexeme);
@@ -353,8 +587,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         }
 
         RionClass rionClass = new RionClass(stmt.name, superClass, fields, methods);
-        environment.assign(stmt.name, rionClass);
-        return null;
+        environment.define(stmt.name.lexeme, rionClass);
     }
 
     @Override
@@ -366,18 +599,24 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt, new Environment(this.environment));
-        return null;
+        return executeBlock(stmt, new Environment(this.environment, stmt.slotCount));
     }
 
-    public void executeBlock(Stmt.Block statements, Environment environment) {
+    /*
+     * runs the statements of a block until one of them completes abruptly, that completion is the block's, and
+     * null when all of them ran to their end.
+     */
+    public Object executeBlock(Stmt.Block statements, Environment environment) {
         Environment previous = this.environment;
         try {
             this.environment = environment;
 
             for (Stmt statement : statements.statements) {
-                execute(statement);
+                if (execute(statement) instanceof Completion completion) {
+                    return completion;
+                }
             }
+            return null;
         } finally {
             this.environment = previous;
         }
@@ -385,23 +624,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
 
     @Override
     public Object visitIfStmt(Stmt.If stmt) {
+        Object completion = null;
         if (isTruthy(stmt.condition)) {
-            execute(stmt.thenBranch);
+            completion = execute(stmt.thenBranch);
         } else if (stmt.elseBranch != null){
-            execute(stmt.elseBranch);
+            completion = execute(stmt.elseBranch);
         }
-        return null;
+        return completion instanceof Completion ? completion : null;
     }
 
     @Override
     public Object visitWhileStmt(Stmt.While stmt) {
         while (isTruthy(stmt.condition)) {
-            try {
-                execute(stmt.body);
-            } catch (Signal.Break s) {
+            Object completion = execute(stmt.body);
+            if (completion == Completion.BREAK) {
                 break;
-            } catch (Signal.Continue s) {
-                continue;
+            } else if (completion == Completion.RETURN) {
+                return completion;
             }
         }
         return null;
@@ -410,20 +649,23 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitReturnStmt(Stmt.Return stmt) {
         Object value = null;
-        if (stmt.expression != null) {
+        if (stmt.isTailCall) {
+            value = visitTailCall((Expr.Call) stmt.expression);
+        } else if (stmt.expression != null) {
             value = evaluate(stmt.expression);
         }
-        throw new Signal.Return(value);
+        returnValue = value;
+        return Completion.RETURN;
     }
 
     @Override
     public Object visitBreakStmt(Stmt.Break stmt) {
-        throw new Signal.Break();
+        return Completion.BREAK;
     }
 
     @Override
     public Object visitContinueStmt(Stmt.Continue stmt) {
-        throw new Signal.Continue();
+        return Completion.CONTINUE;
     }
 
     private Object execute(Stmt stmt) {
@@ -434,58 +676,26 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return expr.accept(this);
     }
 
-    private boolean isNumber(Object o) {
-        if (o == null) {
-            return false;
-        }
-        return o instanceof Double;
-    }
-
     public boolean isWholeNumber(Object o) {
         if (o == null) {
             return false;
         }
-        if (!(o instanceof Double)) {
-            return false;
-        }
-        return ((double) o) * 10 % 10 == 0;
-    }
-
-    private boolean isString(Object o) {
-        if (o == null) {
-            return false;
-        }
-        return o instanceof String;
-    }
-
-    private boolean isEqual(
-            Object o1,
-            Object o2
-    ) {
-        if (o1 == null && o2 == null) {
+        if (o instanceof Integer) {
             return true;
         }
-        if (o1 == null) {
+        if (!(o instanceof Double)) {
             return false;
         }
-        return o1.equals(o2);
-    }
-
-    private void checkNumberOperand(
-            Token operator,
-            Object left,
-            Object right
-    ) {
-        if (left instanceof Double && right instanceof Double) {
-            return;
-        }
-        throw new RuntimeError(operator, "Operands must be a number.");
+        return ((double) o) * 10 % 10 == 0;
     }
 
     public String stringify(Object o) {
         if (o == null) {
             return "nil";
         }
+        if (o instanceof Integer integer) {
+            return stringify((int) integer);
+        }
         if (o instanceof Double) {
             if (((double) o) * 10 % 10 == 0) {
                 String text = o.toString();
@@ -502,6 +712,9 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         if (o == null) {
             return "nil";
         }
+        if (o instanceof Integer integer) {
+            return stringify((int) integer);
+        }
         if (o instanceof Double) {
             if (((double) o) * 10 % 10 == 0) {
                 String text = o.toString();
@@ -511,43 +724,20 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return o.toString();
     }
 
-    private boolean isTruthy(Expr expr) {
-        Object value = evaluate(expr);
-        if (value == null) {
-            return false;
-        }
-        if (value instanceof Boolean) {
-            return (boolean) value;
+    // an integer prints exactly like the double of the same value, and doubles switch to an exponent from ten million
+    private String stringify(int integer) {
+        if (integer > -10_000_000 && integer < 10_000_000) {
+            return Integer.toString(integer);
         }
-        return true;
+        return stringify((Object) (double) integer);
     }
 
-    private void printLine(Object value) {
-        System.out.println(stringify(value));
+    private boolean isTruthy(Expr expr) {
+        return Operators.isTruthy(evaluate(expr));
     }
 
-    public void resolve(
-            Expr expr,
-            int depth,
-            int index
-    ) {
-        locals.put(expr, new VariableInfo(depth, index));
+    private void printLine(Object value) {
+        System.out.println(stringify(value));
     }
 
-    private Object initializedFixedSizeArray(
-            Token operator,
-            RionArray array,
-            Object right
-    ) {
-        if (array.size() != 1) {
-            throw new RuntimeError(operator, "must provide only one initial value for array initializer.");
-        }
-        int length = Integer.parseInt(stringify(right));
-        Object element = array.getElements().getFirst();
-        List<Object> elements = new ArrayList<>();
-        for (int i = 0; i < length; i++) {
-            elements.add(element);
-        }
-        return new RionArray(this, elements);
-    }
 }
@@ -0,0 +1,1110 @@
+package com.kingjoe.orion.jrion;
+
+import java.lang.invoke.MethodHandles;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.kingjoe.orion.jrion.ClassAssembler.*;
+
+/*
+ * Compiles the body of a function to a class of jvm bytecode, which the jvm then compiles to machine code like any
+ * other class. The class is defined as a hidden class next to this one and extends CompiledFunction.
+ *
+ * The parameters and locals of the body live in jvm locals. A local that only ever holds numbers the TypeInference
+ * proved is kept as a double, and operators on proven numbers are single instructions on doubles: an operation on
+ * two integers gives exactly the value the same operation on doubles would, so the result is the same number. A
+ * double that leaves its local is boxed as an integer when it is whole, like Operators gives it, and an array indexed
+ * with a proven number gets the int without anything boxed. Everything else calls the same methods the interpreter
+ * does, in the same order.
+ *
+ * Calls are not invokedynamic sites but INVOKESTATIC calls of the callN helpers of CompiledFunction. invokedynamic
+ * needs a class of version 51 or later, whose methods must carry stack map frames, and the ClassAssembler writes
+ * version 49 so that the verifier infers them; java.lang.classfile, which computes frames, is only a preview api in
+ * jdk 21. The helpers are small enough for the jit to inline, and a compiled callee is entered through the entry
+ * point of its arity without an argument list. What is given up is a type profile per site: the jit sees the
+ * callees of every site at the call in the helper.
+ *
+ * A function that declares functions or classes is not compiled, they would capture the frame it doesn't have.
+ *
+ * Only function bodies are compiled, the top-level script always runs on the interpreter. A script nearly always
+ * declares functions or classes, so as a synthetic function over the globals it would be turned down by the rule
+ * above, and a loop at the top level stays as fast as the interpreter makes it.
+ */
+final class JvmCompiler {
+    private static final String PACKAGE = "com/kingjoe/orion/jrion/";
+    private static final String COMPILED = PACKAGE + "CompiledFunction";
+    private static final String OPERATORS = PACKAGE + "Operators";
+    private static final String INTERPRETER = PACKAGE + "Interpreter";
+    private static final String ENVIRONMENT = PACKAGE + "Environment";
+    private static final String CELL = PACKAGE + "Environment$Cell";
+    private static final String APPENDER = PACKAGE + "Appender";
+    private static final String OBJECT = "Ljava/lang/Object;";
+    private static final String OBJECTS = "[Ljava/lang/Object;";
+    private static final String TOKEN = "L" + PACKAGE + "Token;";
+    private static final String INTERPRETER_TYPE = "L" + INTERPRETER + ";";
+    private static final String ENVIRONMENT_TYPE = "L" + ENVIRONMENT + ";";
+    private static final String CALLABLE = "L" + PACKAGE + "RionCallable;";
+    // the closure, the receiver and its superclass that every entry point starts with
+    private static final String ENTRY = "(" + ENVIRONMENT_TYPE + "L" + PACKAGE + "RionInstance;L" + PACKAGE
+            + "RionClass;";
+    private static final int CLOSURE = 1;
+    private static final int INSTANCE = 2;
+    private static final int MAX_FIXED_ARITY = 4;
+
+    private final Stmt.Function function;
+    private final int receiverSlots;
+    private final List<Object> constants = new ArrayList<>();
+    private final Map<Object, Integer> constantIndexes = new IdentityHashMap<>();
+
+    // the jvm local of every slot of the scopes of the body, and the slots of each scope that hold a double
+    private final Map<Stmt.Block, int[]> locals = new HashMap<>();
+    private final Map<Stmt.Block, BitSet> numberSlots = new HashMap<>();
+    private final Map<Stmt.Block, BitSet> objectSlots = new HashMap<>();
+    // the double jvm local each hoisted proven number is kept in, see hoisted
+    private final Map<Expr.Hoisted, Integer> hoistedNumbers = new IdentityHashMap<>();
+    private boolean usesContext = false;
+
+    // the scopes the code being compiled is in, the frame of the function first
+    private final List<Stmt.Block> blocks = new ArrayList<>();
+    // number of variables defined so far in each scope, which is the slot of the next one
+    private final List<Integer> definedCounts = new ArrayList<>();
+    private ClassAssembler.Code code;
+    private int interpreterLocal;
+    private int constantsLocal;
+    private int contextLocal;
+    private Loop loop = null;
+
+    private JvmCompiler(Stmt.Function function, boolean isMethod) {
+        this.function = function;
+        this.receiverSlots = isMethod ? 2 : 0;
+    }
+
+    private static class Unsupported extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Unsupported(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    private static class Loop {
+        final Loop enclosing;
+        final ClassAssembler.Label start;
+        final ClassAssembler.Label end;
+
+        Loop(Loop enclosing, ClassAssembler.Label start, ClassAssembler.Label end) {
+            this.enclosing = enclosing;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    /*
+     * the compiled body of the function, or null when it can't be compiled and stays with the interpreter
+     */
+    static CompiledFunction compile(Interpreter interpreter, Stmt.Function function, boolean isMethod) {
+        JvmCompiler compiler = new JvmCompiler(function, isMethod);
+        byte[] bytes;
+        try {
+            bytes = compiler.assemble(PACKAGE + "Compiled$" + function.name.lexeme);
+        } catch (Unsupported | TooLarge e) {
+            return null;
+        }
+        try {
+            Class<?> compiled = MethodHandles.lookup().defineHiddenClass(bytes, true).lookupClass();
+            return (CompiledFunction) compiled.getDeclaredConstructor(Interpreter.class, Object[].class)
+                    .newInstance(interpreter, compiler.constants.toArray());
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not load the compiled '" + function.name.lexeme + "'", e);
+        }
+    }
+
+    /*
+     * A function of up to four parameters gets them as the arguments of the entry point of its arity, the array
+     * entry point passes them on to it. The body of a function of more parameters is the array entry point.
+     */
+    private byte[] assemble(String className) {
+        Stmt.Block body = (Stmt.Block) function.body;
+        int arity = function.parameters.size();
+        int parameterBase = arity <= MAX_FIXED_ARITY ? 4 : 5;
+        analyze(body, parameterBase);
+
+        ClassAssembler assembler = new ClassAssembler(className, COMPILED);
+        String constructor = "(" + INTERPRETER_TYPE + OBJECTS + ")V";
+        ClassAssembler.Code init = assembler.method("<init>", constructor);
+        init.aload(0);
+        init.aload(1);
+        init.aload(2);
+        init.invoke(INVOKESPECIAL, COMPILED, "<init>", constructor);
+        init.op(RETURN, 0);
+
+        String arrayEntry = ENTRY + OBJECTS + ")" + OBJECT;
+        if (arity <= MAX_FIXED_ARITY) {
+            String entry = ENTRY + OBJECT.repeat(arity) + ")" + OBJECT;
+            code = assembler.method("call" + arity, entry);
+            compileBody(body);
+
+            ClassAssembler.Code bridge = assembler.method("call", arrayEntry);
+            for (int local = 0; local < 4; local++) {
+                bridge.aload(local);
+            }
+            for (int i = 0; i < arity; i++) {
+                bridge.aload(4);
+                bridge.iconst(i);
+                bridge.op(AALOAD, -1);
+            }
+            bridge.invoke(INVOKEVIRTUAL, className, "call" + arity, entry);
+            bridge.op(ARETURN, -1);
+        } else {
+            code = assembler.method("call", arrayEntry);
+            for (int i = 0; i < arity; i++) {
+                code.aload(4);
+                code.iconst(i);
+                code.op(AALOAD, -1);
+                code.astore(parameterBase + i);
+            }
+            compileBody(body);
+        }
+        return assembler.toByteArray();
+    }
+
+    private void compileBody(Stmt.Block body) {
+        code.aload(0);
+        code.field(GETFIELD, COMPILED, "interpreter", INTERPRETER_TYPE);
+        code.astore(interpreterLocal);
+        code.aload(0);
+        code.field(GETFIELD, COMPILED, "constants", OBJECTS);
+        code.astore(constantsLocal);
+        if (usesContext) {
+            code.aload(CLOSURE);
+            if (receiverSlots > 0) {
+                code.aload(INSTANCE);
+                code.aload(INSTANCE + 1);
+                code.invoke(INVOKESTATIC, COMPILED, "context",
+                            ENTRY + ")" + ENVIRONMENT_TYPE);
+            }
+            code.astore(contextLocal);
+        }
+        // every local is given a value of its type up front, the verifier then knows its type everywhere
+        for (Map.Entry<Stmt.Block, int[]> scope : locals.entrySet()) {
+            int[] indexes = scope.getValue();
+            BitSet numbers = numberSlots.get(scope.getKey());
+            int first = scope.getKey() == body ? receiverSlots + function.parameters.size() : 0;
+            for (int slot = first; slot < indexes.length; slot++) {
+                if (numbers.get(slot)) {
+                    code.dconst(0);
+                    code.dstore(indexes[slot]);
+                } else {
+                    code.op(ACONST_NULL, 1);
+                    code.astore(indexes[slot]);
+                }
+            }
+        }
+        for (int local : hoistedNumbers.values()) {
+            code.dconst(0);
+            code.dstore(local);
+        }
+
+        enterScope(body, receiverSlots + function.parameters.size());
+        for (Stmt statement : body.statements) {
+            compile(statement);
+        }
+        exitScope();
+        code.op(ACONST_NULL, 1);
+        code.op(ARETURN, -1);
+    }
+
+    /*
+     * Finds the slots of every scope of the body that only ever hold proven numbers, and gives each slot its jvm
+     * local: 'this', 'super' and the parameters are the arguments of the entry point and hold objects.
+     */
+    private void analyze(Stmt.Block body, int parameterBase) {
+        int arity = function.parameters.size();
+        interpreterLocal = parameterBase + arity;
+        constantsLocal = interpreterLocal + 1;
+        contextLocal = constantsLocal + 1;
+
+        enterScope(body, receiverSlots + arity);
+        objectSlots.get(body).set(0, receiverSlots + arity);
+        analyze(body.statements);
+        exitScope();
+
+        int next = contextLocal + 1;
+        for (Map.Entry<Stmt.Block, int[]> scope : locals.entrySet()) {
+            Stmt.Block block = scope.getKey();
+            int[] indexes = scope.getValue();
+            BitSet numbers = numberSlots.get(block);
+            numbers.andNot(objectSlots.get(block));
+            for (int slot = 0; slot < indexes.length; slot++) {
+                if (block == body && slot < receiverSlots) {
+                    indexes[slot] = INSTANCE + slot;
+                } else if (block == body && slot < receiverSlots + arity) {
+                    indexes[slot] = parameterBase + slot - receiverSlots;
+                } else {
+                    indexes[slot] = next;
+                    next += numbers.get(slot) ? 2 : 1;
+                }
+            }
+        }
+        for (Map.Entry<Expr.Hoisted, Integer> hoisted : hoistedNumbers.entrySet()) {
+            hoisted.setValue(next);
+            next += 2;
+        }
+    }
+
+    private void analyze(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            analyze(statement);
+        }
+    }
+
+    private void analyze(Stmt stmt) {
+        switch (stmt) {
+            case Stmt.Expression expression -> analyze(expression.expression);
+            case Stmt.Var var -> {
+                if (var.initializer != null) {
+                    analyze(var.initializer);
+                }
+                stored(0, define(), var.initializer);
+            }
+            case Stmt.Block block -> {
+                enterScope(block, 0);
+                analyze(block.statements);
+                exitScope();
+            }
+            case Stmt.If branch -> {
+                analyze(branch.condition);
+                analyze(branch.thenBranch);
+                if (branch.elseBranch != null) {
+                    analyze(branch.elseBranch);
+                }
+            }
+            case Stmt.While loop -> {
+                analyze(loop.condition);
+                analyze(loop.body);
+            }
+            case Stmt.Return ret -> {
+                if (ret.expression != null) {
+                    analyze(ret.expression);
+                }
+            }
+            case Stmt.Function declaration -> throw new Unsupported("declares a function");
+            case Stmt.Class declaration -> throw new Unsupported("declares a class");
+            default -> {
+            }
+        }
+    }
+
+    private void analyze(Expr expr) {
+        switch (expr) {
+            case Expr.Binary binary -> {
+                analyze(binary.left);
+                analyze(binary.right);
+            }
+            case Expr.Logical logical -> {
+                analyze(logical.left);
+                analyze(logical.right);
+            }
+            case Expr.Grouping grouping -> analyze(grouping.expression);
+            case Expr.Unary unary -> analyze(unary.right);
+            case Expr.Assign assign -> {
+                analyze(assign.value);
+                if (!assign.isGlobal()) {
+                    stored(assign.depth, assign.slot, assign.value);
+                }
+            }
+            case Expr.IndexAssign assign -> {
+                analyze(assign.indexee);
+                analyze(assign.index);
+                analyze(assign.value);
+            }
+            case Expr.Call call -> {
+                if (call.callee instanceof Expr.Get) {
+                    usesContext = true;
+                }
+                analyze(call.callee);
+                analyzeAll(call.arguments);
+            }
+            case Expr.Indexing indexing -> {
+                analyze(indexing.indexee);
+                analyze(indexing.index);
+            }
+            case Expr.Get get -> {
+                usesContext = true;
+                analyze(get.object);
+            }
+            case Expr.Set set -> {
+                usesContext = true;
+                analyze(set.object);
+                analyze(set.value);
+            }
+            case Expr.Array array -> analyzeAll(array.elements);
+            case Expr.Map map -> {
+                analyzeAll(map.keys);
+                analyzeAll(map.values);
+            }
+            // an inlined call is compiled as the call
+            case Expr.Inline inline -> analyze(inline.call);
+            case Expr.Append append -> {
+                analyzeAll(append.parts);
+                if (!append.builder.isGlobal()) {
+                    stored(append.builder.depth, append.builder.slot, null);
+                }
+            }
+            case Expr.Hoisted hoisted -> {
+                analyze(hoisted.value);
+                if (!hoisted.hoisted.isGlobal()) {
+                    stored(hoisted.hoisted.depth, hoisted.hoisted.slot, null);
+                }
+                if (isNumber(hoisted)) {
+                    hoistedNumbers.put(hoisted, -1);
+                }
+            }
+            case Expr.Super sup -> {
+                usesContext = true;
+                if (sup.arguments != null) {
+                    analyzeAll(sup.arguments);
+                }
+            }
+            case Expr.AnonFunc anonymous -> throw new Unsupported("declares a function");
+            default -> {
+            }
+        }
+    }
+
+    private void analyzeAll(List<Expr> exprs) {
+        for (Expr expr : exprs) {
+            analyze(expr);
+        }
+    }
+
+    // a slot holds a double when it is only ever assigned proven numbers
+    private void stored(int depth, int slot, Expr value) {
+        int scope = blocks.size() - 1 - depth;
+        if (scope < 0) {
+            return;
+        }
+        Stmt.Block block = blocks.get(scope);
+        if (slot >= block.slotCount) {
+            throw new Unsupported("slot out of its scope");
+        }
+        (value != null && isNumber(value) ? numberSlots : objectSlots).get(block).set(slot);
+    }
+
+    private void enterScope(Stmt.Block block, int defined) {
+        blocks.add(block);
+        definedCounts.add(defined);
+        if (!locals.containsKey(block)) {
+            locals.put(block, new int[block.slotCount]);
+            numberSlots.put(block, new BitSet());
+            objectSlots.put(block, new BitSet());
+        }
+    }
+
+    private void exitScope() {
+        blocks.removeLast();
+        definedCounts.removeLast();
+    }
+
+    private int define() {
+        int slot = definedCounts.getLast();
+        definedCounts.set(definedCounts.size() - 1, slot + 1);
+        return slot;
+    }
+
+    private static boolean isNumber(Expr expr) {
+        return expr.type == TypeInference.Type.NUMBER;
+    }
+
+    private void compile(Stmt stmt) {
+        switch (stmt) {
+            case Stmt.Expression expression -> effect(expression.expression);
+            case Stmt.Var var -> {
+                int slot = define();
+                Stmt.Block block = blocks.getLast();
+                int local = locals.get(block)[slot];
+                if (numberSlots.get(block).get(slot)) {
+                    number(var.initializer);
+                    code.dstore(local);
+                } else {
+                    if (var.initializer == null) {
+                        code.op(ACONST_NULL, 1);
+                    } else {
+                        value(var.initializer);
+                    }
+                    code.astore(local);
+                }
+            }
+            case Stmt.Block block -> {
+                enterScope(block, 0);
+                for (Stmt statement : block.statements) {
+                    compile(statement);
+                }
+                exitScope();
+            }
+            case Stmt.If branch -> {
+                ClassAssembler.Label otherwise = code.label();
+                branch(branch.condition, false, otherwise);
+                compile(branch.thenBranch);
+                if (branch.elseBranch != null) {
+                    ClassAssembler.Label end = code.label();
+                    code.jump(GOTO, end);
+                    code.mark(otherwise);
+                    compile(branch.elseBranch);
+                    code.mark(end);
+                } else {
+                    code.mark(otherwise);
+                }
+            }
+            case Stmt.While whileLoop -> {
+                loop = new Loop(loop, code.label(), code.label());
+                code.mark(loop.start);
+                branch(whileLoop.condition, false, loop.end);
+                compile(whileLoop.body);
+                code.jump(GOTO, loop.start);
+                code.mark(loop.end);
+                loop = loop.enclosing;
+            }
+            case Stmt.Return ret -> {
+                if (ret.isTailCall && ret.expression instanceof Expr.Call call) {
+                    callable(call);
+                    array(call.arguments);
+                    code.aload(interpreterLocal);
+                    constant(call.paren, Token.class);
+                    code.invoke(INVOKESTATIC, COMPILED, "tailCall",
+                                "(" + CALLABLE + OBJECTS + INTERPRETER_TYPE + TOKEN + ")" + OBJECT);
+                } else if (ret.expression != null) {
+                    value(ret.expression);
+                } else {
+                    code.op(ACONST_NULL, 1);
+                }
+                code.op(ARETURN, -1);
+            }
+            case Stmt.Break ignored -> code.jump(GOTO, loop.end);
+            case Stmt.Continue ignored -> code.jump(GOTO, loop.start);
+            default -> throw new Unsupported("unexpected statement");
+        }
+    }
+
+    // evaluates the expression for its effects only
+    private void effect(Expr expr) {
+        switch (expr) {
+            case Expr.Assign assign -> assign(assign, false);
+            case Expr.Grouping grouping -> effect(grouping.expression);
+            case Expr.Append append when !append.parts.isEmpty() -> append(append);
+            default -> {
+                value(expr);
+                code.op(POP, -1);
+            }
+        }
+    }
+
+    // leaves the value of the expression on the stack
+    private void value(Expr expr) {
+        switch (expr) {
+            case Expr.Literal literal -> literal(literal.value);
+            case Expr.Grouping grouping -> value(grouping.expression);
+            case Expr.Variable variable -> load(variable, variable.name);
+            case Expr.This self -> load(self, self.keyword);
+            case Expr.Assign assign -> assign(assign, true);
+            case Expr.Binary binary -> binary(binary);
+            case Expr.Logical logical -> booleanValue(logical);
+            case Expr.Unary unary when unary.operator.type == TokenType.BANG -> booleanValue(unary);
+            case Expr.Unary unary -> {
+                if (isNumber(unary.right)) {
+                    number(unary);
+                    box();
+                } else {
+                    value(unary.right);
+                    code.invoke(INVOKESTATIC, OPERATORS, "negate", "(" + OBJECT + ")" + OBJECT);
+                }
+            }
+            case Expr.Call call -> call(call);
+            case Expr.Inline inline -> call(inline.call);
+            case Expr.Indexing indexing when isNumber(indexing.index) -> {
+                value(indexing.indexee);
+                constant(indexing.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "indexee", "(" + OBJECT + TOKEN + ")" + OBJECT);
+                number(indexing.index);
+                code.aload(interpreterLocal);
+                constant(indexing.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "index",
+                            "(" + OBJECT + "D" + INTERPRETER_TYPE + TOKEN + ")" + OBJECT);
+            }
+            case Expr.Indexing indexing -> {
+                code.aload(interpreterLocal);
+                constant(indexing.squareBrace, Token.class);
+                value(indexing.indexee);
+                constant(indexing.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "indexee", "(" + OBJECT + TOKEN + ")" + OBJECT);
+                value(indexing.index);
+                code.invoke(INVOKEVIRTUAL, INTERPRETER, "index", "(" + TOKEN + OBJECT + OBJECT + ")" + OBJECT);
+            }
+            case Expr.IndexAssign assign when isNumber(assign.index) -> {
+                value(assign.indexee);
+                constant(assign.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "assignedIndexee", "(" + OBJECT + TOKEN + ")" + OBJECT);
+                number(assign.index);
+                value(assign.value);
+                code.aload(interpreterLocal);
+                constant(assign.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "indexAssign",
+                            "(" + OBJECT + "D" + OBJECT + INTERPRETER_TYPE + TOKEN + ")V");
+                code.op(ACONST_NULL, 1);
+            }
+            case Expr.IndexAssign assign -> {
+                code.aload(interpreterLocal);
+                constant(assign.squareBrace, Token.class);
+                value(assign.indexee);
+                constant(assign.squareBrace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "assignedIndexee", "(" + OBJECT + TOKEN + ")" + OBJECT);
+                value(assign.index);
+                value(assign.value);
+                code.invoke(INVOKEVIRTUAL, INTERPRETER, "indexAssign", "(" + TOKEN + OBJECT + OBJECT + OBJECT + ")V");
+                code.op(ACONST_NULL, 1);
+            }
+            case Expr.Get get -> {
+                code.aload(interpreterLocal);
+                code.aload(contextLocal);
+                value(get.object);
+                constant(get.cache, PropertyCache.class);
+                code.invoke(INVOKEVIRTUAL, INTERPRETER, "getProperty",
+                            "(" + ENVIRONMENT_TYPE + OBJECT + "L" + PACKAGE + "PropertyCache;)" + OBJECT);
+            }
+            case Expr.Set set -> {
+                code.aload(interpreterLocal);
+                code.aload(contextLocal);
+                value(set.object);
+                constant(set.property, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "instance", "(" + OBJECT + TOKEN + ")" + OBJECT);
+                constant(set.cache, PropertyCache.class);
+                value(set.value);
+                code.invoke(INVOKEVIRTUAL, INTERPRETER, "setProperty",
+                            "(" + ENVIRONMENT_TYPE + OBJECT + "L" + PACKAGE + "PropertyCache;" + OBJECT + ")" + OBJECT);
+            }
+            case Expr.Array array -> {
+                array(array.elements);
+                code.aload(interpreterLocal);
+                code.invoke(INVOKESTATIC, COMPILED, "array", "(" + OBJECTS + INTERPRETER_TYPE + ")" + OBJECT);
+            }
+            case Expr.Map map -> {
+                code.iconst(2 * map.keys.size());
+                code.type(ANEWARRAY, "java/lang/Object");
+                for (int i = 0; i < map.keys.size(); i++) {
+                    element(2 * i, map.keys.get(i));
+                    element(2 * i + 1, map.values.get(i));
+                }
+                code.aload(interpreterLocal);
+                constant(map.brace, Token.class);
+                code.invoke(INVOKESTATIC, COMPILED, "map", "(" + OBJECTS + INTERPRETER_TYPE + TOKEN + ")" + OBJECT);
+            }
+            case Expr.Append append when append.parts.isEmpty() -> {
+                load(append.builder, append.builder.name);
+                load(append.target, append.target.name);
+                code.invoke(INVOKESTATIC, COMPILED, "appended", "(" + OBJECT + OBJECT + ")" + OBJECT);
+            }
+            case Expr.Append append -> {
+                append(append);
+                code.op(ACONST_NULL, 1);
+            }
+            case Expr.Hoisted hoisted when hoistedNumbers.containsKey(hoisted) -> {
+                number(hoisted);
+                box();
+            }
+            case Expr.Hoisted hoisted -> hoisted(hoisted);
+            case Expr.Super sup -> superExpression(sup);
+            default -> throw new Unsupported("unexpected expression");
+        }
+    }
+
+    /*
+     * leaves the value of an expression the TypeInference proved to be a number on the stack as a double
+     */
+    private void number(Expr expr) {
+        switch (expr) {
+            case Expr.Literal literal when literal.value instanceof Number number -> code.dconst(number.doubleValue());
+            case Expr.Grouping grouping -> number(grouping.expression);
+            case Expr.Hoisted hoisted when hoistedNumbers.containsKey(hoisted) -> hoistedNumber(hoisted);
+            case Expr.Variable variable when isNumberLocal(variable) -> code.dload(local(variable));
+            case Expr.Assign assign when isNumberLocal(assign) -> {
+                number(assign.value);
+                code.op(DUP2, 2);
+                code.dstore(local(assign));
+            }
+            case Expr.Binary binary when binary.operands == TypeInference.Type.NUMBER && isArithmetic(binary) -> {
+                number(binary.left);
+                number(binary.right);
+                switch (binary.operator.type) {
+                    case PLUS -> code.op(DADD, -2);
+                    case MINUS -> code.op(DSUB, -2);
+                    case STAR -> code.op(DMUL, -2);
+                    case MODULO -> code.op(DREM, -2);
+                    default -> {
+                        constant(binary.operator, Token.class);
+                        code.invoke(INVOKESTATIC, COMPILED, "divide", "(DD" + TOKEN + ")D");
+                    }
+                }
+            }
+            case Expr.Unary unary when unary.operator.type == TokenType.MINUS && isNumber(unary.right) -> {
+                number(unary.right);
+                code.op(DNEG, 0);
+            }
+            default -> {
+                value(expr);
+                code.invoke(INVOKESTATIC, OPERATORS, "toDouble", "(" + OBJECT + ")D");
+            }
+        }
+    }
+
+    /*
+     * jumps to target when the truthiness of the expression is jumpIf, and falls through otherwise
+     */
+    private void branch(Expr expr, boolean jumpIf, ClassAssembler.Label target) {
+        switch (expr) {
+            case Expr.Grouping grouping -> branch(grouping.expression, jumpIf, target);
+            case Expr.Literal literal -> {
+                if (Operators.isTruthy(literal.value) == jumpIf) {
+                    code.jump(GOTO, target);
+                }
+            }
+            case Expr.Unary unary when unary.operator.type == TokenType.BANG -> branch(unary.right, !jumpIf, target);
+            case Expr.Logical logical -> {
+                boolean isAnd = logical.operator.type == TokenType.AND;
+                if (isAnd != jumpIf) {
+                    // false for 'and' or true for 'or' is decided by either operand
+                    branch(logical.left, jumpIf, target);
+                    branch(logical.right, jumpIf, target);
+                } else {
+                    ClassAssembler.Label decided = code.label();
+                    branch(logical.left, !jumpIf, decided);
+                    branch(logical.right, jumpIf, target);
+                    code.mark(decided);
+                }
+            }
+            case Expr.Binary binary when binary.operands == TypeInference.Type.NUMBER && isComparison(binary) -> {
+                number(binary.left);
+                number(binary.right);
+                // a comparison with NaN is false, the two compare instructions differ in what they give for it
+                switch (binary.operator.type) {
+                    case LESS -> {
+                        code.op(DCMPG, -3);
+                        code.jump(jumpIf ? IFLT : IFGE, target);
+                    }
+                    case LESS_EQUAL -> {
+                        code.op(DCMPG, -3);
+                        code.jump(jumpIf ? IFLE : IFGT, target);
+                    }
+                    case GREATER -> {
+                        code.op(DCMPL, -3);
+                        code.jump(jumpIf ? IFGT : IFLE, target);
+                    }
+                    default -> {
+                        code.op(DCMPL, -3);
+                        code.jump(jumpIf ? IFGE : IFLT, target);
+                    }
+                }
+            }
+            case Expr.Binary binary when isComparison(binary) || isEquality(binary) -> {
+                test(binary);
+                code.jump(jumpIf ? IFNE : IFEQ, target);
+            }
+            default -> {
+                value(expr);
+                code.invoke(INVOKESTATIC, OPERATORS, "isTruthy", "(" + OBJECT + ")Z");
+                code.jump(jumpIf ? IFNE : IFEQ, target);
+            }
+        }
+    }
+
+    private void booleanValue(Expr expr) {
+        ClassAssembler.Label isFalse = code.label();
+        ClassAssembler.Label end = code.label();
+        branch(expr, false, isFalse);
+        code.field(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+        code.jump(GOTO, end);
+        code.mark(isFalse);
+        code.field(GETSTATIC, "java/lang/Boolean", "FALSE", "Ljava/lang/Boolean;");
+        code.mark(end);
+    }
+
+    private void binary(Expr.Binary binary) {
+        if (binary.operands == TypeInference.Type.STRING) {
+            code.type(NEW, "java/lang/StringBuilder");
+            code.op(DUP, 1);
+            code.invoke(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "()V");
+            concatenation(binary);
+            code.invoke(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;");
+            return;
+        }
+        if (isComparison(binary) || isEquality(binary)) {
+            if (binary.operands == TypeInference.Type.NUMBER && isComparison(binary)) {
+                booleanValue(binary);
+            } else {
+                test(binary);
+                code.invoke(INVOKESTATIC, "java/lang/Boolean", "valueOf", "(Z)Ljava/lang/Boolean;");
+            }
+            return;
+        }
+        if (binary.operands == TypeInference.Type.NUMBER && isArithmetic(binary)) {
+            number(binary);
+            box();
+            return;
+        }
+        String name = switch (binary.operator.type) {
+            case MINUS -> "subtract";
+            case SLASH -> "divide";
+            case MODULO -> "modulo";
+            case STAR -> "multiply";
+            case PLUS -> "add";
+            default -> throw new Unsupported("unexpected operator");
+        };
+        boolean takesInterpreter = binary.operator.type == TokenType.STAR || binary.operator.type == TokenType.PLUS;
+        if (takesInterpreter) {
+            code.aload(interpreterLocal);
+        }
+        constant(binary.operator, Token.class);
+        value(binary.left);
+        value(binary.right);
+        code.invoke(INVOKESTATIC, OPERATORS, name,
+                    "(" + (takesInterpreter ? INTERPRETER_TYPE : "") + TOKEN + OBJECT + OBJECT + ")" + OBJECT);
+    }
+
+    // leaves the boolean a comparison or an equality gives on the stack as an int
+    private void test(Expr.Binary binary) {
+        TokenType operator = binary.operator.type;
+        if (isEquality(binary)) {
+            if (binary.operands == TypeInference.Type.NUMBER) {
+                number(binary.left);
+                number(binary.right);
+                code.invoke(INVOKESTATIC, COMPILED, "isEqual", "(DD)Z");
+            } else {
+                value(binary.left);
+                value(binary.right);
+                code.invoke(INVOKESTATIC, OPERATORS, "isEqual", "(" + OBJECT + OBJECT + ")Z");
+            }
+            if (operator == TokenType.BANG_EQUAL) {
+                code.iconst(1);
+                code.op(IXOR, -1);
+            }
+            return;
+        }
+        String name = switch (operator) {
+            case GREATER -> "greater";
+            case GREATER_EQUAL -> "greaterEqual";
+            case LESS -> "less";
+            default -> "lessEqual";
+        };
+        constant(binary.operator, Token.class);
+        value(binary.left);
+        value(binary.right);
+        code.invoke(INVOKESTATIC, OPERATORS, name, "(" + TOKEN + OBJECT + OBJECT + ")Z");
+    }
+
+    // appends the text of each operand of a chain of '+' that a proven string runs through to the builder on the stack
+    private void concatenation(Expr expr) {
+        if (expr instanceof Expr.Binary binary && binary.operands == TypeInference.Type.STRING) {
+            concatenation(binary.left);
+            concatenation(binary.right);
+            return;
+        }
+        value(expr);
+        code.aload(interpreterLocal);
+        code.invoke(INVOKESTATIC, COMPILED, "append",
+                    "(Ljava/lang/StringBuilder;" + OBJECT + INTERPRETER_TYPE + ")Ljava/lang/StringBuilder;");
+    }
+
+    private static boolean isArithmetic(Expr.Binary binary) {
+        return switch (binary.operator.type) {
+            case PLUS, MINUS, STAR, SLASH, MODULO -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isComparison(Expr.Binary binary) {
+        return switch (binary.operator.type) {
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isEquality(Expr.Binary binary) {
+        return binary.operator.type == TokenType.EQUAL_EQUAL || binary.operator.type == TokenType.BANG_EQUAL;
+    }
+
+    private void literal(Object value) {
+        if (value == null) {
+            code.op(ACONST_NULL, 1);
+        } else if (value instanceof Boolean bool) {
+            code.field(GETSTATIC, "java/lang/Boolean", bool ? "TRUE" : "FALSE", "Ljava/lang/Boolean;");
+        } else {
+            constant(value, null);
+        }
+    }
+
+    private void box() {
+        code.invoke(INVOKESTATIC, COMPILED, "box", "(D)" + OBJECT);
+    }
+
+    /*
+     * A call checks its callee before the arguments are evaluated. 'object.name(...)' calls a method with the
+     * object as its receiver, the object stays on the stack under the method for that.
+     */
+    private void call(Expr.Call call) {
+        int count = call.arguments.size();
+        String fixed = count <= MAX_FIXED_ARITY ? OBJECT.repeat(count) : OBJECTS;
+        if (call.callee instanceof Expr.Get get) {
+            value(get.object);
+            code.op(DUP, 1);
+            code.aload(interpreterLocal);
+            code.aload(contextLocal);
+            constant(get.cache, PropertyCache.class);
+            constant(call.paren, Token.class);
+            code.iconst(count);
+            code.invoke(INVOKESTATIC, COMPILED, "method",
+                        "(" + OBJECT + INTERPRETER_TYPE + ENVIRONMENT_TYPE + "L" + PACKAGE + "PropertyCache;" + TOKEN
+                                + "I)" + OBJECT);
+            arguments(call.arguments);
+            code.aload(interpreterLocal);
+            constant(call.paren, Token.class);
+            code.invoke(INVOKESTATIC, COMPILED, count <= MAX_FIXED_ARITY ? "invoke" + count : "invoke",
+                        "(" + OBJECT + OBJECT + fixed + INTERPRETER_TYPE + TOKEN + ")" + OBJECT);
+            return;
+        }
+        callable(call);
+        arguments(call.arguments);
+        code.aload(interpreterLocal);
+        constant(call.paren, Token.class);
+        code.invoke(INVOKESTATIC, COMPILED, count <= MAX_FIXED_ARITY ? "call" + count : "call",
+                    "(" + CALLABLE + fixed + INTERPRETER_TYPE + TOKEN + ")" + OBJECT);
+    }
+
+    private void callable(Expr.Call call) {
+        value(call.callee);
+        code.aload(interpreterLocal);
+        constant(call.paren, Token.class);
+        code.iconst(call.arguments.size());
+        code.invoke(INVOKESTATIC, COMPILED, "callable", "(" + OBJECT + INTERPRETER_TYPE + TOKEN + "I)" + CALLABLE);
+    }
+
+    // the values of the expressions, one by one on the stack when there are up to four of them, else in an array
+    private void arguments(List<Expr> arguments) {
+        if (arguments.size() <= MAX_FIXED_ARITY) {
+            for (Expr argument : arguments) {
+                value(argument);
+            }
+        } else {
+            array(arguments);
+        }
+    }
+
+    private void array(List<Expr> elements) {
+        code.iconst(elements.size());
+        code.type(ANEWARRAY, "java/lang/Object");
+        for (int i = 0; i < elements.size(); i++) {
+            element(i, elements.get(i));
+        }
+    }
+
+    private void element(int index, Expr value) {
+        code.op(DUP, 1);
+        code.iconst(index);
+        value(value);
+        code.op(AASTORE, -3);
+    }
+
+    private void superExpression(Expr.Super expr) {
+        if (expr.method == null && expr.arguments == null) {
+            code.op(ACONST_NULL, 1);
+            return;
+        }
+        String superType = "L" + PACKAGE + "Expr$Super;";
+        code.aload(interpreterLocal);
+        code.aload(contextLocal);
+        constant(expr, Expr.Super.class);
+        if (expr.method != null) {
+            code.invoke(INVOKEVIRTUAL, INTERPRETER, "superMethod", "(" + ENVIRONMENT_TYPE + superType + ")" + OBJECT);
+        } else {
+            array(expr.arguments);
+            code.invoke(INVOKEVIRTUAL, INTERPRETER, "superInitialize",
+                        "(" + ENVIRONMENT_TYPE + superType + OBJECTS + ")" + OBJECT);
+        }
+    }
+
+    /*
+     * the loop builds the target in the builder, see Expr.Append
+     */
+    private void append(Expr.Append append) {
+        load(append.builder, append.builder.name);
+        load(append.target, append.target.name);
+        code.invoke(INVOKESTATIC, COMPILED, "appender", "(" + OBJECT + OBJECT + ")L" + APPENDER + ";");
+        code.op(DUP, 1);
+        store(append.builder, append.builder.name);
+        for (int i = 0; i < append.parts.size(); i++) {
+            code.op(DUP, 1);
+            code.aload(interpreterLocal);
+            constant(append.operators.get(i), Token.class);
+            value(append.parts.get(i));
+            code.invoke(INVOKEVIRTUAL, APPENDER, "append", "(" + INTERPRETER_TYPE + TOKEN + OBJECT + ")V");
+        }
+        code.op(POP, -1);
+    }
+
+    private void load(Expr.Reference reference, Token name) {
+        if (reference.isGlobal()) {
+            constant(reference.cell, Environment.Cell.class);
+            constant(name, Token.class);
+            code.invoke(INVOKEVIRTUAL, CELL, "get", "(" + TOKEN + ")" + OBJECT);
+        } else if (isUpvalue(reference)) {
+            code.aload(CLOSURE);
+            code.iconst(reference.depth - blocks.size());
+            code.iconst(reference.slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "getAt", "(II)" + OBJECT);
+        } else if (isNumberLocal(reference)) {
+            code.dload(local(reference));
+            box();
+        } else {
+            code.aload(local(reference));
+        }
+    }
+
+    // stores the object on top of the stack in the variable
+    private void store(Expr.Reference reference, Token name) {
+        if (reference.isGlobal()) {
+            constant(reference.cell, Environment.Cell.class);
+            code.op(SWAP, 0);
+            constant(name, Token.class);
+            code.op(SWAP, 0);
+            code.invoke(INVOKEVIRTUAL, CELL, "assign", "(" + TOKEN + OBJECT + ")V");
+        } else if (isUpvalue(reference)) {
+            code.aload(CLOSURE);
+            code.op(SWAP, 0);
+            code.iconst(reference.depth - blocks.size());
+            code.iconst(reference.slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assignAt", "(" + OBJECT + "II)V");
+        } else if (isNumberLocal(reference)) {
+            throw new Unsupported("object stored in a number local");
+        } else {
+            code.astore(local(reference));
+        }
+    }
+
+    private void assign(Expr.Assign assign, boolean keepValue) {
+        if (assign.isGlobal()) {
+            constant(assign.cell, Environment.Cell.class);
+            constant(assign.name, Token.class);
+            value(assign.value);
+            if (keepValue) {
+                code.op(DUP_X2, 1);
+            }
+            code.invoke(INVOKEVIRTUAL, CELL, "assign", "(" + TOKEN + OBJECT + ")V");
+        } else if (isUpvalue(assign)) {
+            code.aload(CLOSURE);
+            value(assign.value);
+            if (keepValue) {
+                code.op(DUP_X1, 1);
+            }
+            code.iconst(assign.depth - blocks.size());
+            code.iconst(assign.slot);
+            code.invoke(INVOKEVIRTUAL, ENVIRONMENT, "assignAt", "(" + OBJECT + "II)V");
+        } else if (isNumberLocal(assign)) {
+            number(assign.value);
+            if (keepValue) {
+                code.op(DUP2, 2);
+            }
+            code.dstore(local(assign));
+            if (keepValue) {
+                box();
+            }
+        } else {
+            value(assign.value);
+            if (keepValue) {
+                code.op(DUP, 1);
+            }
+            code.astore(local(assign));
+        }
+    }
+
+    /*
+     * the value kept in the hoisted slot, or the value computed and kept there when it can be, see Expr.Hoisted
+     */
+    private void hoisted(Expr.Hoisted hoisted) {
+        ClassAssembler.Label end = code.label();
+        load(hoisted.hoisted, hoisted.hoisted.name);
+        code.op(DUP, 1);
+        code.jump(IFNONNULL, end);
+        code.op(POP, -1);
+        value(hoisted.value);
+        code.op(DUP, 1);
+        if (hoisted.receiver == null) {
+            code.op(ACONST_NULL, 1);
+        } else {
+            load(hoisted.receiver, hoisted.receiver.name);
+        }
+        code.invoke(INVOKESTATIC, PACKAGE + "Expr$Hoisted", "keeps", "(" + OBJECT + OBJECT + ")Z");
+        code.jump(IFEQ, end);
+        code.op(DUP, 1);
+        store(hoisted.hoisted, hoisted.hoisted.name);
+        code.mark(end);
+    }
+
+    /*
+     * a proven number is kept unboxed in a double local of its own, its slot only tells it was computed
+     */
+    private void hoistedNumber(Expr.Hoisted hoisted) {
+        int local = hoistedNumbers.get(hoisted);
+        ClassAssembler.Label kept = code.label();
+        ClassAssembler.Label end = code.label();
+        load(hoisted.hoisted, hoisted.hoisted.name);
+        code.jump(IFNONNULL, kept);
+        number(hoisted.value);
+        code.op(DUP2, 2);
+        code.dstore(local);
+        code.field(GETSTATIC, "java/lang/Boolean", "TRUE", "Ljava/lang/Boolean;");
+        store(hoisted.hoisted, hoisted.hoisted.name);
+        code.jump(GOTO, end);
+        code.mark(kept);
+        code.dload(local);
+        code.mark(end);
+    }
+
+    // a local of an enclosing function, read and written through the closure
+    private boolean isUpvalue(Expr.Reference reference) {
+        return reference.depth >= blocks.size();
+    }
+
+    private boolean isNumberLocal(Expr.Reference reference) {
+        if (reference.isGlobal() || isUpvalue(reference)) {
+            return false;
+        }
+        Stmt.Block block = blocks.get(blocks.size() - 1 - reference.depth);
+        return numberSlots.get(block).get(reference.slot);
+    }
+
+    private int local(Expr.Reference reference) {
+        Stmt.Block block = blocks.get(blocks.size() - 1 - reference.depth);
+        int[] indexes = locals.get(block);
+        if (reference.slot >= indexes.length) {
+            throw new Unsupported("slot out of its scope");
+        }
+        return indexes[reference.slot];
+    }
+
+    private void constant(Object value, Class<?> type) {
+        Integer index = constantIndexes.get(value);
+        if (index == null) {
+            index = constants.size();
+            constants.add(value);
+            constantIndexes.put(value, index);
+        }
+        code.aload(constantsLocal);
+        code.iconst(index);
+        code.op(AALOAD, -1);
+        if (type != null) {
+            code.type(CHECKCAST, type.getName().replace('.', '/'));
+        }
+    }
+}
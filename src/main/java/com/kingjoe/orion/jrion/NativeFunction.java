@@ -1,83 +1,26 @@
 package com.kingjoe.orion.jrion;
 
-import java.util.List;
-
+/*
+ * The functions every program starts with, bound as globals by NativeMethod.
+ */
 public class NativeFunction {
 
     public static void load(Environment globals) {
-        time(globals);
-        print(globals);
-        println(globals);
+        NativeMethod.bind(globals, NativeFunction.class);
     }
 
-    private static void time(Environment globals) {
-        globals.define("time", new RionCallable() {
-
-            @Override
-            public Object call(
-                    Interpreter interpreter,
-                    List<Object> arguments
-            ) {
-                return (double) System.currentTimeMillis();
-            }
-
-            @Override
-            public int getArity() {
-                return 0;
-            }
-
-            @Override
-            public String toString() {
-                return "<native fn time>";
-            }
-        });
+    @RionNative
+    public static double time() {
+        return System.currentTimeMillis();
     }
 
-    private static void print(Environment globals) {
-        globals.define("print", new RionCallable() {
-
-            @Override
-            public Object call(
-                    Interpreter interpreter,
-                    List<Object> arguments
-            ) {
-                System.out.print(interpreter.prettyPrint(arguments.getFirst()));
-                return null;
-            }
-
-            @Override
-            public int getArity() {
-                return 1;
-            }
-
-            @Override
-            public String toString() {
-                return "<native fn print>";
-            }
-        });
+    @RionNative
+    public static void print(Interpreter interpreter, Object value) {
+        System.out.print(interpreter.prettyPrint(value));
     }
 
-    private static void println(Environment globals) {
-        globals.define("println", new RionCallable() {
-
-            @Override
-            public Object call(
-                    Interpreter interpreter,
-                    List<Object> arguments
-            ) {
-                System.out.println(interpreter.prettyPrint(arguments.getFirst()));
-                return null;
-            }
-
-            @Override
-            public int getArity() {
-                return 1;
-            }
-
-            @Override
-            public String toString() {
-                return "<native fn print>";
-            }
-        });
+    @RionNative
+    public static void println(Interpreter interpreter, Object value) {
+        System.out.println(interpreter.prettyPrint(value));
     }
 }
@@ -0,0 +1,223 @@
+package com.kingjoe.orion.jrion;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.List;
+
+/*
+ * A global function backed by a static java method marked with @RionNative. The method handle is adapted once,
+ * when the function is bound, to take the interpreter followed by the arguments as objects: each argument goes
+ * through the conversion to its parameter's type and the result is boxed, or nil for a void method. A parameter
+ * can be an Object, which is passed as it is, a double, an int, a boolean or a String, and an Interpreter as the
+ * first parameter receives the interpreter of the call.
+ *
+ * The handles are record components, which the jit trusts to be final, so a call of a function it knows folds
+ * down to a direct call of the method.
+ */
+record NativeMethod(
+        String name,
+        int arity,
+        MethodHandle handle,
+        MethodHandle spreader
+) implements RionCallable {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /*
+     * defines every @RionNative method of natives in globals
+     */
+    static void bind(Environment globals, Class<?> natives) {
+        for (Method method : natives.getDeclaredMethods()) {
+            RionNative annotation = method.getAnnotation(RionNative.class);
+            if (annotation != null) {
+                NativeMethod function = of(method, annotation.name().isEmpty() ? method.getName() : annotation.name());
+                globals.define(function.name, function);
+            }
+        }
+    }
+
+    static NativeMethod of(Method method, String name) {
+        if (!Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalArgumentException("Native function '" + name + "' must be static");
+        }
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Native function '" + name + "' is not accessible", e);
+        }
+
+        Class<?>[] parameters = method.getParameterTypes();
+        boolean takesInterpreter = parameters.length > 0 && parameters[0] == Interpreter.class;
+        if (!takesInterpreter) {
+            handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+        }
+        int first = takesInterpreter ? 1 : 0;
+        int arity = parameters.length - first;
+        for (int i = 0; i < arity; i++) {
+            handle = MethodHandles.filterArguments(handle, i + 1, conversion(name, i, parameters[first + i]));
+        }
+
+        MethodType type = MethodType.genericMethodType(arity + 1).changeParameterType(0, Interpreter.class);
+        handle = handle.asType(type);
+        return new NativeMethod(name, arity, handle, handle.asSpreader(Object[].class, arity));
+    }
+
+    private static MethodHandle conversion(String name, int index, Class<?> type) {
+        String converter;
+        if (type == Object.class) {
+            return MethodHandles.identity(Object.class);
+        } else if (type == double.class) {
+            converter = "toDouble";
+        } else if (type == int.class) {
+            converter = "toInt";
+        } else if (type == boolean.class) {
+            converter = "toBoolean";
+        } else if (type == String.class) {
+            converter = "toText";
+        } else {
+            throw new IllegalArgumentException("Native function '" + name + "' takes unsupported type " + type.getName());
+        }
+        try {
+            MethodHandle conversion = LOOKUP.findStatic(
+                    NativeMethod.class,
+                    converter,
+                    MethodType.methodType(type, String.class, int.class, Object.class)
+            );
+            return MethodHandles.insertArguments(conversion, 0, name, index);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static double toDouble(String name, int index, Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+        if (value instanceof Integer integer) {
+            return integer;
+        }
+        throw new ArgumentError(name, index, "a number");
+    }
+
+    private static int toInt(String name, int index, Object value) {
+        if (value instanceof Integer integer) {
+            return integer;
+        }
+        if (value instanceof Double number && number == (int) (double) number) {
+            return (int) (double) number;
+        }
+        throw new ArgumentError(name, index, "an integer");
+    }
+
+    private static boolean toBoolean(String name, int index, Object value) {
+        if (value instanceof Boolean bool) {
+            return bool;
+        }
+        throw new ArgumentError(name, index, "a boolean");
+    }
+
+    private static String toText(String name, int index, Object value) {
+        if (value instanceof String text) {
+            return text;
+        }
+        throw new ArgumentError(name, index, "a string");
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, List<Object> arguments) {
+        return call(interpreter, arguments.toArray());
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        try {
+            return (Object) spreader.invokeExact(interpreter, arguments);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        try {
+            return (Object) handle.invokeExact(interpreter);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object first) {
+        try {
+            return (Object) handle.invokeExact(interpreter, first);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        try {
+            return (Object) handle.invokeExact(interpreter, first, second);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        try {
+            return (Object) handle.invokeExact(interpreter, first, second, third);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object first, Object second, Object third, Object fourth) {
+        try {
+            return (Object) handle.invokeExact(interpreter, first, second, third, fourth);
+        } catch (Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    private static RuntimeException rethrow(Throwable error) {
+        if (error instanceof RuntimeException exception) {
+            return exception;
+        }
+        if (error instanceof Error fatal) {
+            throw fatal;
+        }
+        return new IllegalStateException(error);
+    }
+
+    @Override
+    public int getArity() {
+        return arity;
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn " + name + ">";
+    }
+
+    /*
+     * An argument that does not convert to its parameter's type. The function doesn't know where it is called
+     * from, the call site turns the error into a RuntimeError on its own line.
+     */
+    static final class ArgumentError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ArgumentError(String name, int index, String expected) {
+            super("Argument " + (index + 1) + " of '" + name + "' must be " + expected + ".", null, false, false);
+        }
+
+        RuntimeError at(Token token) {
+            return new RuntimeError(token, getMessage());
+        }
+    }
+}
@@ -0,0 +1,2305 @@
+package com.kingjoe.orion.jrion;
+
+import com.kingjoe.orion.jrion.builtin.RionArray;
+import com.kingjoe.orion.jrion.builtin.RionMap;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Executable tree produced by the NodeCompiler. Every node has its children, resolved variable slots and operator
+ * baked in, so executing a node is a single virtual call with no visitor double dispatch or side table lookups.
+ * Statements return the value of an expression statement so the repl can echo it, and null otherwise. Inside a
+ * function they are run through executeStatement, which reports a break, continue or return as its Completion.
+ */
+public abstract class Node {
+
+    Node() {
+    }
+
+    /*
+     * Specialization states of the operator nodes. An operator starts uninitialized, its first execution picks the
+     * specialization matching the operand types it sees and any other operand type afterwards widens it, from
+     * integers to doubles and from there to the generic operator for good, so a node that only ever sees integers
+     * only ever pays for one type guard.
+     */
+    static final int UNINITIALIZED = 0;
+    static final int INTS = 1;
+    static final int DOUBLES = 2;
+    static final int STRINGS = 3;
+    static final int GENERIC = 4;
+
+    abstract Object execute(Environment environment);
+
+    /*
+     * Evaluates the node to an unboxed number. A node that produces anything else throws the value back in an
+     * UnexpectedValue, and the caller falls back to its generic path with it.
+     */
+    double executeDouble(Environment environment) {
+        return expectDouble(execute(environment));
+    }
+
+    int executeInt(Environment environment) {
+        return expectInt(execute(environment));
+    }
+
+    /*
+     * Evaluates the node for its side effects only, so a statement like 'i = i + 1;' never boxes its value.
+     */
+    void executeVoid(Environment environment) {
+        execute(environment);
+    }
+
+    Completion executeStatement(Environment environment) {
+        executeVoid(environment);
+        return Completion.NORMAL;
+    }
+
+    /*
+     * the number of nodes of the plain tree this node does the work of, more than one for the nodes the NodeCompiler
+     * fuses out of the most common loop idioms
+     */
+    int fusedNodes() {
+        return 1;
+    }
+
+    static double expectDouble(Object value) {
+        if (value instanceof Double number) {
+            return number;
+        }
+        if (value instanceof Integer integer) {
+            return integer;
+        }
+        throw new UnexpectedValue(value);
+    }
+
+    static int expectInt(Object value) {
+        if (value instanceof Integer integer) {
+            return integer;
+        }
+        throw new UnexpectedValue(value);
+    }
+
+    static Object[] executeAll(Node[] nodes, Environment environment) {
+        Object[] values = new Object[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            values[i] = nodes[i].execute(environment);
+        }
+        return values;
+    }
+
+    static final class UnexpectedValue extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        final transient Object value;
+
+        UnexpectedValue(Object value) {
+            // thrown on every type mismatch of a specialized node, hence no stack trace
+            super(null, null, false, false);
+            this.value = value;
+        }
+    }
+
+    static int specialize(int state, Object left, Object right) {
+        if (state == UNINITIALIZED) {
+            if (left instanceof Integer && right instanceof Integer) {
+                return INTS;
+            }
+            if (left instanceof String && right instanceof String) {
+                return STRINGS;
+            }
+        }
+        if (state <= INTS && isNumber(left) && isNumber(right)) {
+            return DOUBLES;
+        }
+        return GENERIC;
+    }
+
+    private static boolean isNumber(Object value) {
+        return value instanceof Integer || value instanceof Double;
+    }
+
+    static class Literal extends Node {
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return value;
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return expectDouble(value);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return expectInt(value);
+        }
+    }
+
+    static class LocalGet extends Node {
+        final int depth;
+        final int index;
+
+        LocalGet(int depth, int index) {
+            this.depth = depth;
+            this.index = index;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return environment.getAt(depth, index);
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return environment.getNumberAt(depth, index);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return environment.getIntAt(depth, index);
+        }
+    }
+
+    static class LocalSet extends Node {
+        final int depth;
+        final int index;
+        final Node value;
+
+        LocalSet(int depth, int index, Node value) {
+            this.depth = depth;
+            this.index = index;
+            this.value = value;
+        }
+
+        // specialization of the assigned values, as for the operators
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            environment.assignAt(result, depth, index);
+            return result;
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            if (state == INTS) {
+                try {
+                    environment.assignIntAt(value.executeInt(environment), depth, index);
+                } catch (UnexpectedValue e) {
+                    state = e.value instanceof Double ? DOUBLES : GENERIC;
+                    environment.assignAt(e.value, depth, index);
+                }
+            } else if (state == DOUBLES) {
+                try {
+                    environment.assignNumberAt(value.executeDouble(environment), depth, index);
+                } catch (UnexpectedValue e) {
+                    state = GENERIC;
+                    environment.assignAt(e.value, depth, index);
+                }
+            } else {
+                Object result = value.execute(environment);
+                environment.assignAt(result, depth, index);
+                if (state == UNINITIALIZED) {
+                    state = result instanceof Integer ? INTS : result instanceof Double ? DOUBLES : GENERIC;
+                }
+            }
+        }
+    }
+
+    static class GlobalGet extends Node {
+        final Environment.Cell cell;
+        final Token name;
+
+        GlobalGet(Environment.Cell cell, Token name) {
+            this.cell = cell;
+            this.name = name;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return cell.get(name);
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return cell.getNumber(name);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return cell.getInt(name);
+        }
+    }
+
+    static class GlobalSet extends Node {
+        final Environment.Cell cell;
+        final Token name;
+        final Node value;
+
+        GlobalSet(Environment.Cell cell, Token name, Node value) {
+            this.cell = cell;
+            this.name = name;
+            this.value = value;
+        }
+
+        // specialization of the assigned values, as for the operators
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            Object result = value.execute(environment);
+            cell.assign(name, result);
+            return result;
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            if (state == INTS) {
+                try {
+                    cell.assignInt(name, value.executeInt(environment));
+                } catch (UnexpectedValue e) {
+                    state = e.value instanceof Double ? DOUBLES : GENERIC;
+                    cell.assign(name, e.value);
+                }
+            } else if (state == DOUBLES) {
+                try {
+                    cell.assignNumber(name, value.executeDouble(environment));
+                } catch (UnexpectedValue e) {
+                    state = GENERIC;
+                    cell.assign(name, e.value);
+                }
+            } else {
+                Object result = value.execute(environment);
+                cell.assign(name, result);
+                if (state == UNINITIALIZED) {
+                    state = result instanceof Integer ? INTS : result instanceof Double ? DOUBLES : GENERIC;
+                }
+            }
+        }
+    }
+
+    /*
+     * The operators below are written out per class rather than shared through a base class, so that every operator
+     * gets its own type profile for its operands. Once specialized an operator evaluates its operands with
+     * executeInt or executeDouble, so a chain of arithmetic only boxes its final result, and not even that when the
+     * result is stored in a variable. An integer operation whose result is not an integer, because it overflows or is
+     * fractional, widens the operator to doubles.
+     */
+    static class Add extends Node {
+        final Interpreter interpreter;
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Add(Interpreter interpreter, Token operator, Node left, Node right) {
+            this.interpreter = interpreter;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            if (state != INTS) {
+                return expectInt(execute(environment));
+            }
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(e.value, right.execute(environment)));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(a, e.value));
+            }
+            long result = (long) a + b;
+            if (result == (int) result) {
+                return (int) result;
+            }
+            return expectInt(deoptimize(a, b));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            if (state == INTS) {
+                try {
+                    return executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    return expectDouble(e.value);
+                }
+            }
+            if (state != DOUBLES) {
+                return expectDouble(execute(environment));
+            }
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(e.value, right.execute(environment)));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(a, e.value));
+            }
+            return a + b;
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            long result = (long) a + b;
+            if (result == (int) result) {
+                return (int) result;
+            }
+            return deoptimize(a, b);
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a + b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            if (state == STRINGS) {
+                if (l instanceof String a && r instanceof String b) {
+                    return a.concat(b);
+                }
+                state = GENERIC;
+            }
+            return Operators.add(interpreter, operator, l, r);
+        }
+    }
+
+    static class Subtract extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Subtract(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            if (state != INTS) {
+                return expectInt(execute(environment));
+            }
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(e.value, right.execute(environment)));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(a, e.value));
+            }
+            long result = (long) a - b;
+            if (result == (int) result) {
+                return (int) result;
+            }
+            return expectInt(deoptimize(a, b));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            if (state == INTS) {
+                try {
+                    return executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    return expectDouble(e.value);
+                }
+            }
+            if (state != DOUBLES) {
+                return expectDouble(execute(environment));
+            }
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(e.value, right.execute(environment)));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(a, e.value));
+            }
+            return a - b;
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            long result = (long) a - b;
+            if (result == (int) result) {
+                return (int) result;
+            }
+            return deoptimize(a, b);
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a - b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.subtract(operator, l, r);
+        }
+    }
+
+    static class Multiply extends Node {
+        final Interpreter interpreter;
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Multiply(Interpreter interpreter, Token operator, Node left, Node right) {
+            this.interpreter = interpreter;
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            if (state != INTS) {
+                return expectInt(execute(environment));
+            }
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(e.value, right.execute(environment)));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(a, e.value));
+            }
+            long result = (long) a * b;
+            // a zero product of a negative operand is -0, which only a double holds
+            if (result == (int) result && (result != 0 || (a | b) >= 0)) {
+                return (int) result;
+            }
+            return expectInt(deoptimize(a, b));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            if (state == INTS) {
+                try {
+                    return executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    return expectDouble(e.value);
+                }
+            }
+            if (state != DOUBLES) {
+                return expectDouble(execute(environment));
+            }
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(e.value, right.execute(environment)));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(a, e.value));
+            }
+            return a * b;
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            long result = (long) a * b;
+            // a zero product of a negative operand is -0, which only a double holds
+            if (result == (int) result && (result != 0 || (a | b) >= 0)) {
+                return (int) result;
+            }
+            return deoptimize(a, b);
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a * b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.multiply(interpreter, operator, l, r);
+        }
+    }
+
+    static class Divide extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Divide(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            if (state != INTS) {
+                return expectInt(execute(environment));
+            }
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(e.value, right.execute(environment)));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(a, e.value));
+            }
+            if (b != 0 && a % b == 0 && (a != 0 || b > 0) && (a != Integer.MIN_VALUE || b != -1)) {
+                return a / b;
+            }
+            return expectInt(deoptimize(a, b));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            if (state == INTS) {
+                try {
+                    return executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    return expectDouble(e.value);
+                }
+            }
+            if (state != DOUBLES) {
+                return expectDouble(execute(environment));
+            }
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(e.value, right.execute(environment)));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(a, e.value));
+            }
+            if (b == 0) {
+                // reports the division by zero
+                return expectDouble(generic(a, b));
+            }
+            return a / b;
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            if (b != 0 && a % b == 0 && (a != 0 || b > 0) && (a != Integer.MIN_VALUE || b != -1)) {
+                return a / b;
+            }
+            return deoptimize(a, b);
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            if (b == 0) {
+                // reports the division by zero
+                return generic(a, b);
+            }
+            return a / b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.divide(operator, l, r);
+        }
+    }
+
+    static class Modulo extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Modulo(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            if (state != INTS) {
+                return expectInt(execute(environment));
+            }
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(e.value, right.execute(environment)));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(deoptimize(a, e.value));
+            }
+            if (b != 0 && (a >= 0 || a % b != 0)) {
+                return a % b;
+            }
+            return expectInt(deoptimize(a, b));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            if (state == INTS) {
+                try {
+                    return executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    return expectDouble(e.value);
+                }
+            }
+            if (state != DOUBLES) {
+                return expectDouble(execute(environment));
+            }
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(e.value, right.execute(environment)));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(deoptimize(a, e.value));
+            }
+            return a % b;
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            if (b != 0 && (a >= 0 || a % b != 0)) {
+                return a % b;
+            }
+            return deoptimize(a, b);
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a % b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.modulo(operator, l, r);
+        }
+    }
+
+    static class Greater extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Greater(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a > b;
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a > b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.greater(operator, l, r);
+        }
+    }
+
+    static class GreaterEqual extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        GreaterEqual(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a >= b;
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a >= b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.greaterEqual(operator, l, r);
+        }
+    }
+
+    static class Less extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        Less(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a < b;
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a < b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.less(operator, l, r);
+        }
+    }
+
+    static class LessEqual extends Node {
+        final Token operator;
+        final Node left;
+        final Node right;
+
+        LessEqual(Token operator, Node left, Node right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            if (state == INTS) {
+                return executeInts(environment);
+            }
+            if (state == DOUBLES) {
+                return executeDoubles(environment);
+            }
+            Object l = left.execute(environment);
+            Object r = right.execute(environment);
+            if (state == UNINITIALIZED) {
+                state = specialize(state, l, r);
+            }
+            return generic(l, r);
+        }
+
+        private Object executeInts(Environment environment) {
+            int a;
+            try {
+                a = left.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            int b;
+            try {
+                b = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a <= b;
+        }
+
+        private Object executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = left.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(e.value, right.execute(environment));
+            }
+            double b;
+            try {
+                b = right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return deoptimize(a, e.value);
+            }
+            return a <= b;
+        }
+
+        private Object deoptimize(Object l, Object r) {
+            state = specialize(state, l, r);
+            return generic(l, r);
+        }
+
+        private Object generic(Object l, Object r) {
+            return Operators.lessEqual(operator, l, r);
+        }
+    }
+
+    static class Equal extends Node {
+        final Node left;
+        final Node right;
+
+        Equal(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return Operators.isEqual(left.execute(environment), right.execute(environment));
+        }
+    }
+
+    static class NotEqual extends Node {
+        final Node left;
+        final Node right;
+
+        NotEqual(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return !Operators.isEqual(left.execute(environment), right.execute(environment));
+        }
+    }
+
+    static class And extends Node {
+        final Node left;
+        final Node right;
+
+        And(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return Operators.isTruthy(left.execute(environment)) && Operators.isTruthy(right.execute(environment));
+        }
+    }
+
+    static class Or extends Node {
+        final Node left;
+        final Node right;
+
+        Or(Node left, Node right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return Operators.isTruthy(left.execute(environment)) || Operators.isTruthy(right.execute(environment));
+        }
+    }
+
+    static class Not extends Node {
+        final Node right;
+
+        Not(Node right) {
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return !Operators.isTruthy(right.execute(environment));
+        }
+    }
+
+    static class Negate extends Node {
+        final Node right;
+
+        Negate(Node right) {
+            this.right = right;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return Operators.negate(right.execute(environment));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            try {
+                return -right.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                return expectDouble(Operators.negate(e.value));
+            }
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            int a;
+            try {
+                a = right.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                return expectInt(Operators.negate(e.value));
+            }
+            // -0 and the negated smallest int are doubles
+            if (a != 0 && a != Integer.MIN_VALUE) {
+                return -a;
+            }
+            return expectInt(Operators.negate(a));
+        }
+    }
+
+    static class Call extends Node {
+        final Interpreter interpreter;
+        final Token paren;
+        final Node callee;
+        final Node[] arguments;
+
+        Call(Interpreter interpreter, Token paren, Node callee, Node[] arguments) {
+            this.interpreter = interpreter;
+            this.paren = paren;
+            this.callee = callee;
+            this.arguments = arguments;
+        }
+
+        // the callee last called here, already checked to be callable with as many arguments as the call passes
+        RionCallable checkedCallee;
+
+        @Override
+        Object execute(Environment environment) {
+            return call(environment, checkCallee(callee.execute(environment)));
+        }
+
+        RionCallable checkCallee(Object callee) {
+            if (callee == checkedCallee) {
+                return checkedCallee;
+            }
+            RionCallable callable = interpreter.checkCallable(paren, callee, arguments.length);
+            checkedCallee = callable;
+            return callable;
+        }
+
+        Object call(Environment environment, RionCallable callable) {
+            Node[] arguments = this.arguments;
+            try {
+                return switch (arguments.length) {
+                    case 0 -> callable.call0(interpreter);
+                    case 1 -> callable.call1(interpreter, arguments[0].execute(environment));
+                    case 2 -> callable.call2(interpreter, arguments[0].execute(environment), arguments[1].execute(environment));
+                    case 3 -> callable.call3(interpreter, arguments[0].execute(environment), arguments[1].execute(environment),
+                                             arguments[2].execute(environment));
+                    case 4 -> callable.call4(interpreter, arguments[0].execute(environment), arguments[1].execute(environment),
+                                             arguments[2].execute(environment), arguments[3].execute(environment));
+                    default -> callable.call(interpreter, executeAll(arguments, environment));
+                };
+            } catch (NativeMethod.ArgumentError error) {
+                throw error.at(paren);
+            }
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return expectDouble(execute(environment));
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return expectInt(execute(environment));
+        }
+    }
+
+    /*
+     * the call of a 'return f(...)', only ever executed by its Return, see Interpreter.tailCall.
+     */
+    static class Inline extends Node {
+        final Expr.Inline expr;
+        final Node[] arguments;
+        final Node body;
+        final Node call;
+
+        Inline(Expr.Inline expr, Node[] arguments, Node body, Node call) {
+            this.expr = expr;
+            this.arguments = arguments;
+            this.body = body;
+            this.call = call;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            if (!expr.isInlined()) {
+                return call.execute(environment);
+            }
+            for (int i = 0; i < arguments.length; i++) {
+                environment.assignAt(arguments[i].execute(environment), 0, expr.slot + i);
+            }
+            return body.execute(environment);
+        }
+    }
+
+    // a chain of '+' with a proven string in it, built in a single builder
+    static class Concat extends Node {
+        final Interpreter interpreter;
+        final Node[] parts;
+
+        Concat(Interpreter interpreter, Node[] parts) {
+            this.interpreter = interpreter;
+            this.parts = parts;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            StringBuilder text = new StringBuilder();
+            for (Node part : parts) {
+                Operators.appendText(interpreter, text, part.execute(environment));
+            }
+            return text.toString();
+        }
+    }
+
+    static class Append extends Node {
+        final Interpreter interpreter;
+        final Node target;
+        final int depth;
+        final int slot;
+        final Token[] operators;
+        final Node[] parts;
+
+        Append(Interpreter interpreter, Node target, Expr.Variable builder, Token[] operators, Node[] parts) {
+            this.interpreter = interpreter;
+            this.target = target;
+            this.depth = builder.depth;
+            this.slot = builder.slot;
+            this.operators = operators;
+            this.parts = parts;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Appender appender = (Appender) environment.getAt(depth, slot);
+            if (parts.length == 0) {
+                return appender == null ? target.execute(environment) : appender.value();
+            }
+            if (appender == null) {
+                appender = new Appender(target.execute(environment));
+                environment.assignAt(appender, depth, slot);
+            }
+            for (int i = 0; i < parts.length; i++) {
+                appender.append(interpreter, operators[i], parts[i].execute(environment));
+            }
+            return null;
+        }
+    }
+
+    static class Hoisted extends Node {
+        final Node value;
+        final int depth;
+        final int slot;
+        // null unless the value is the length of the receiver
+        final Node receiver;
+
+        Hoisted(Node value, Expr.Variable hoisted, Node receiver) {
+            this.value = value;
+            this.depth = hoisted.depth;
+            this.slot = hoisted.slot;
+            this.receiver = receiver;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object hoisted = environment.getAt(depth, slot);
+            if (hoisted != null) {
+                return hoisted;
+            }
+            Object computed = value.execute(environment);
+            if (Expr.Hoisted.keeps(computed, receiver == null ? null : receiver.execute(environment))) {
+                environment.assignAt(computed, depth, slot);
+            }
+            return computed;
+        }
+    }
+
+    static class TailCall extends Call {
+
+        TailCall(Interpreter interpreter, Token paren, Node callee, Node[] arguments) {
+            super(interpreter, paren, callee, arguments);
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            RionCallable callable = checkCallee(callee.execute(environment));
+            return interpreter.tailCall(paren, callable, executeAll(arguments, environment));
+        }
+    }
+
+    /*
+     * a call of 'object.name(...)', see Interpreter.invokeMethod.
+     */
+    static class Invoke extends Call {
+        final PropertyCache cache;
+        final Node object;
+
+        Invoke(Interpreter interpreter, Token paren, PropertyCache cache, Node object, Node[] arguments) {
+            super(interpreter, paren, null, arguments);
+            this.cache = cache;
+            this.object = object;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object receiver = object.execute(environment);
+            RionClass.Property method = interpreter.methodOf(environment, receiver, cache);
+            Object function = method == null ? interpreter.getProperty(environment, receiver, cache) : method.method();
+            RionCallable callable = checkCallee(function);
+            if (method == null) {
+                return call(environment, callable);
+            }
+            RionFunction invoked = method.method();
+            RionInstance instance = (RionInstance) receiver;
+            RionClass superClass = method.superClass();
+            Node[] arguments = this.arguments;
+            return switch (arguments.length) {
+                case 0 -> invoked.call0(interpreter, instance, superClass);
+                case 1 -> invoked.call1(interpreter, instance, superClass, arguments[0].execute(environment));
+                case 2 -> invoked.call2(interpreter, instance, superClass, arguments[0].execute(environment),
+                                        arguments[1].execute(environment));
+                case 3 -> invoked.call3(interpreter, instance, superClass, arguments[0].execute(environment),
+                                        arguments[1].execute(environment), arguments[2].execute(environment));
+                case 4 -> invoked.call4(interpreter, instance, superClass, arguments[0].execute(environment),
+                                        arguments[1].execute(environment), arguments[2].execute(environment),
+                                        arguments[3].execute(environment));
+                default -> invoked.call(interpreter, instance, superClass, executeAll(arguments, environment));
+            };
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return expectDouble(execute(environment));
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return expectInt(execute(environment));
+        }
+    }
+
+    static class Index extends Node {
+        final Interpreter interpreter;
+        final Token squareBrace;
+        final Node indexee;
+        final Node index;
+
+        Index(Interpreter interpreter, Token squareBrace, Node indexee, Node index) {
+            this.interpreter = interpreter;
+            this.squareBrace = squareBrace;
+            this.indexee = indexee;
+            this.index = index;
+        }
+
+        // cleared for good once an array is indexed by something else than an integer
+        boolean isIntIndex = true;
+
+        @Override
+        Object execute(Environment environment) {
+            Object target = indexee.execute(environment);
+            if (isIntIndex && target instanceof RionArray array) {
+                try {
+                    return array.get(squareBrace, index.executeInt(environment));
+                } catch (UnexpectedValue e) {
+                    isIntIndex = false;
+                    return array.get(squareBrace, e.value);
+                }
+            }
+            return interpreter.index(squareBrace, target, index.execute(environment));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return expectDouble(execute(environment));
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return expectInt(execute(environment));
+        }
+    }
+
+    static class IndexSet extends Node {
+        final Interpreter interpreter;
+        final Token squareBrace;
+        final Node indexee;
+        final Node index;
+        final Node value;
+
+        IndexSet(Interpreter interpreter, Token squareBrace, Node indexee, Node index, Node value) {
+            this.interpreter = interpreter;
+            this.squareBrace = squareBrace;
+            this.indexee = indexee;
+            this.index = index;
+            this.value = value;
+        }
+
+        // cleared for good once an array is indexed by something else than an integer
+        boolean isIntIndex = true;
+
+        @Override
+        Object execute(Environment environment) {
+            Object target = indexee.execute(environment);
+            if (isIntIndex && target instanceof RionArray array) {
+                int position;
+                try {
+                    position = index.executeInt(environment);
+                } catch (UnexpectedValue e) {
+                    isIntIndex = false;
+                    array.set(squareBrace, e.value, value.execute(environment));
+                    return null;
+                }
+                array.set(squareBrace, position, value.execute(environment));
+                return null;
+            }
+            Object key = index.execute(environment);
+            interpreter.indexAssign(squareBrace, target, key, value.execute(environment));
+            return null;
+        }
+    }
+
+    /*
+     * The nodes below fuse the idioms loops are made of, 'i = i + 1', 'i < n', 'a[i]' and 'x = x + a[i]', into a
+     * single node each. They read and write the locals involved directly instead of through a node per variable and
+     * operator, and fall back to the generic operators as soon as a local holds something else than a number. Which
+     * of them pay off on a program is shown by running it with --node-histogram.
+     */
+    static class IncrementLocal extends Node {
+        final Interpreter interpreter;
+        final Token operator;
+        final int depth;
+        final int index;
+        final int step;
+
+        IncrementLocal(Interpreter interpreter, Token operator, int depth, int index, int step) {
+            this.interpreter = interpreter;
+            this.operator = operator;
+            this.depth = depth;
+            this.index = index;
+            this.step = step;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            executeVoid(environment);
+            return environment.getAt(depth, index);
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            int amount = operator.type == TokenType.MINUS ? -step : step;
+            if (!environment.addAt(amount, depth, index)) {
+                Object value = environment.getAt(depth, index);
+                Object result = operator.type == TokenType.MINUS
+                        ? Operators.subtract(operator, value, step)
+                        : Operators.add(interpreter, operator, value, step);
+                environment.assignUnboxedAt(result, depth, index);
+            }
+        }
+
+        // the assignment, the operator, the local and the literal
+        @Override
+        int fusedNodes() {
+            return 4;
+        }
+    }
+
+    static class CompareLocals extends Node {
+        final Token operator;
+        final int leftDepth;
+        final int leftIndex;
+        final int rightDepth;
+        final int rightIndex;
+
+        CompareLocals(Token operator, int leftDepth, int leftIndex, int rightDepth, int rightIndex) {
+            this.operator = operator;
+            this.leftDepth = leftDepth;
+            this.leftIndex = leftIndex;
+            this.rightDepth = rightDepth;
+            this.rightIndex = rightIndex;
+        }
+
+        // cleared for good once either local holds something else than a number
+        boolean isNumbers = true;
+
+        @Override
+        Object execute(Environment environment) {
+            if (isNumbers) {
+                try {
+                    return compare(environment.getNumberAt(leftDepth, leftIndex),
+                            environment.getNumberAt(rightDepth, rightIndex));
+                } catch (UnexpectedValue e) {
+                    isNumbers = false;
+                }
+            }
+            Object l = environment.getAt(leftDepth, leftIndex);
+            Object r = environment.getAt(rightDepth, rightIndex);
+            return switch (operator.type) {
+                case GREATER -> Operators.greater(operator, l, r);
+                case GREATER_EQUAL -> Operators.greaterEqual(operator, l, r);
+                case LESS -> Operators.less(operator, l, r);
+                default -> Operators.lessEqual(operator, l, r);
+            };
+        }
+
+        private boolean compare(double a, double b) {
+            return switch (operator.type) {
+                case GREATER -> a > b;
+                case GREATER_EQUAL -> a >= b;
+                case LESS -> a < b;
+                default -> a <= b;
+            };
+        }
+
+        @Override
+        int fusedNodes() {
+            return 3;
+        }
+    }
+
+    static class IndexLocals extends Node {
+        final Interpreter interpreter;
+        final Token squareBrace;
+        final int indexeeDepth;
+        final int indexeeIndex;
+        final int depth;
+        final int index;
+
+        IndexLocals(Interpreter interpreter, Token squareBrace, int indexeeDepth, int indexeeIndex, int depth, int index) {
+            this.interpreter = interpreter;
+            this.squareBrace = squareBrace;
+            this.indexeeDepth = indexeeDepth;
+            this.indexeeIndex = indexeeIndex;
+            this.depth = depth;
+            this.index = index;
+        }
+
+        // cleared for good once an array is indexed by something else than an integer
+        boolean isIntIndex = true;
+
+        @Override
+        Object execute(Environment environment) {
+            Object target = environment.getAt(indexeeDepth, indexeeIndex);
+            if (isIntIndex && target instanceof RionArray array) {
+                try {
+                    return array.get(squareBrace, environment.getIntAt(depth, index));
+                } catch (UnexpectedValue e) {
+                    isIntIndex = false;
+                    return array.get(squareBrace, e.value);
+                }
+            }
+            return interpreter.index(squareBrace, target, environment.getAt(depth, index));
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            return expectDouble(execute(environment));
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            return expectInt(execute(environment));
+        }
+
+        @Override
+        int fusedNodes() {
+            return 3;
+        }
+    }
+
+    /*
+     * 'x = x + value' for a local x, specialized like Add. x is read before value is evaluated, as the plain tree
+     * would.
+     */
+    static class AccumulateLocal extends Node {
+        final Interpreter interpreter;
+        final Token operator;
+        final int depth;
+        final int index;
+        final Node value;
+
+        AccumulateLocal(Interpreter interpreter, Token operator, int depth, int index, Node value) {
+            this.interpreter = interpreter;
+            this.operator = operator;
+            this.depth = depth;
+            this.index = index;
+            this.value = value;
+        }
+
+        int state = UNINITIALIZED;
+
+        @Override
+        Object execute(Environment environment) {
+            executeVoid(environment);
+            return environment.getAt(depth, index);
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            if (state == INTS) {
+                executeInts(environment);
+            } else if (state == DOUBLES) {
+                executeDoubles(environment);
+            } else {
+                Object l = environment.getAt(depth, index);
+                Object r = value.execute(environment);
+                if (state == UNINITIALIZED) {
+                    state = specialize(state, l, r);
+                }
+                environment.assignUnboxedAt(Operators.add(interpreter, operator, l, r), depth, index);
+            }
+        }
+
+        private void executeInts(Environment environment) {
+            int a;
+            try {
+                a = environment.getIntAt(depth, index);
+            } catch (UnexpectedValue e) {
+                deoptimize(environment, e.value, value.execute(environment));
+                return;
+            }
+            int b;
+            try {
+                b = value.executeInt(environment);
+            } catch (UnexpectedValue e) {
+                deoptimize(environment, a, e.value);
+                return;
+            }
+            long result = (long) a + b;
+            if (result == (int) result) {
+                environment.assignIntAt((int) result, depth, index);
+            } else {
+                deoptimize(environment, a, b);
+            }
+        }
+
+        private void executeDoubles(Environment environment) {
+            double a;
+            try {
+                a = environment.getNumberAt(depth, index);
+            } catch (UnexpectedValue e) {
+                deoptimize(environment, e.value, value.execute(environment));
+                return;
+            }
+            double b;
+            try {
+                b = value.executeDouble(environment);
+            } catch (UnexpectedValue e) {
+                deoptimize(environment, a, e.value);
+                return;
+            }
+            environment.assignNumberAt(a + b, depth, index);
+        }
+
+        private void deoptimize(Environment environment, Object l, Object r) {
+            state = specialize(state, l, r);
+            environment.assignUnboxedAt(Operators.add(interpreter, operator, l, r), depth, index);
+        }
+
+        // the assignment, the operator and the local
+        @Override
+        int fusedNodes() {
+            return 3;
+        }
+    }
+
+    /*
+     * counts the executions of the node it wraps in the NodeHistogram, the NodeCompiler wraps every node in one when
+     * the program runs with --node-histogram
+     */
+    static class Counted extends Node {
+        final Node node;
+        final NodeHistogram.Counter counter;
+
+        Counted(Node node, NodeHistogram.Counter counter) {
+            this.node = node;
+            this.counter = counter;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            counter.executions++;
+            return node.execute(environment);
+        }
+
+        @Override
+        double executeDouble(Environment environment) {
+            counter.executions++;
+            return node.executeDouble(environment);
+        }
+
+        @Override
+        int executeInt(Environment environment) {
+            counter.executions++;
+            return node.executeInt(environment);
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            counter.executions++;
+            node.executeVoid(environment);
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            counter.executions++;
+            return node.executeStatement(environment);
+        }
+    }
+
+    static class GetProperty extends Node {
+        final Interpreter interpreter;
+        final PropertyCache cache;
+        final Node object;
+
+        GetProperty(Interpreter interpreter, PropertyCache cache, Node object) {
+            this.interpreter = interpreter;
+            this.cache = cache;
+            this.object = object;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return interpreter.getProperty(environment, object.execute(environment), cache);
+        }
+    }
+
+    static class SetProperty extends Node {
+        final Interpreter interpreter;
+        final PropertyCache cache;
+        final Node object;
+        final Node value;
+
+        SetProperty(Interpreter interpreter, PropertyCache cache, Node object, Node value) {
+            this.interpreter = interpreter;
+            this.cache = cache;
+            this.object = object;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object target = object.execute(environment);
+            return interpreter.setProperty(environment, target, cache, value.execute(environment));
+        }
+    }
+
+    static class Closure extends Node {
+        final Stmt.Function declaration;
+
+        Closure(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return new RionFunction(declaration, environment, "fn");
+        }
+    }
+
+    static class ArrayLiteral extends Node {
+        final Interpreter interpreter;
+        final Node[] elements;
+
+        ArrayLiteral(Interpreter interpreter, Node[] elements) {
+            this.interpreter = interpreter;
+            this.elements = elements;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            List<Object> values = new ArrayList<>(elements.length);
+            for (Node element : elements) {
+                values.add(element.execute(environment));
+            }
+            return new RionArray(interpreter, values);
+        }
+    }
+
+    static class MapLiteral extends Node {
+        final Interpreter interpreter;
+        final Token brace;
+        final Node[] keys;
+        final Node[] values;
+
+        MapLiteral(Interpreter interpreter, Token brace, Node[] keys, Node[] values) {
+            this.interpreter = interpreter;
+            this.brace = brace;
+            this.keys = keys;
+            this.values = values;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            List<Object> keyValues = new ArrayList<>(keys.length);
+            List<Object> valueValues = new ArrayList<>(values.length);
+            for (int i = 0; i < keys.length; i++) {
+                keyValues.add(keys[i].execute(environment));
+                valueValues.add(values[i].execute(environment));
+            }
+            return new RionMap(interpreter, brace, keyValues, valueValues);
+        }
+    }
+
+    static class SuperGet extends Node {
+        final Interpreter interpreter;
+        final Expr.Super expr;
+
+        SuperGet(Interpreter interpreter, Expr.Super expr) {
+            this.interpreter = interpreter;
+            this.expr = expr;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return interpreter.superMethod(environment, expr);
+        }
+    }
+
+    static class SuperInit extends Node {
+        final Interpreter interpreter;
+        final Expr.Super expr;
+        final Node[] arguments;
+
+        SuperInit(Interpreter interpreter, Expr.Super expr, Node[] arguments) {
+            this.interpreter = interpreter;
+            this.expr = expr;
+            this.arguments = arguments;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return interpreter.superInitialize(environment, expr, executeAll(arguments, environment));
+        }
+    }
+
+    static class ExpressionStatement extends Node {
+        final Node expression;
+
+        ExpressionStatement(Node expression) {
+            this.expression = expression;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            return expression.execute(environment);
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            expression.executeVoid(environment);
+        }
+    }
+
+    static class Define extends Node {
+        final String name;
+        final Node initializer;
+
+        Define(String name, Node initializer) {
+            this.name = name;
+            this.initializer = initializer;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            environment.define(name, initializer == null ? null : initializer.execute(environment));
+            return null;
+        }
+    }
+
+    static class ClassDeclaration extends Node {
+        final Interpreter interpreter;
+        final Stmt.Class declaration;
+        final Node superClass;
+
+        ClassDeclaration(Interpreter interpreter, Stmt.Class declaration, Node superClass) {
+            this.interpreter = interpreter;
+            this.declaration = declaration;
+            this.superClass = superClass;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            Object superClassValue = superClass == null ? null : superClass.execute(environment);
+            interpreter.declareClass(environment, declaration, superClassValue);
+            return null;
+        }
+    }
+
+    static class FunctionDeclaration extends Node {
+        final Stmt.Function declaration;
+
+        FunctionDeclaration(Stmt.Function declaration) {
+            this.declaration = declaration;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            environment.define(declaration.name.lexeme, new RionFunction(declaration, environment, "fn"));
+            return null;
+        }
+    }
+
+    static class Block extends Node {
+        final Node[] statements;
+        final int slotCount;
+
+        Block(Node[] statements, int slotCount) {
+            this.statements = statements;
+            this.slotCount = slotCount;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            executeStatement(environment);
+            return null;
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            executeStatement(environment);
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            Environment scope = new Environment(environment, slotCount);
+            for (Node statement : statements) {
+                Completion completion = statement.executeStatement(scope);
+                if (completion != Completion.NORMAL) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    /*
+     * body of a function, runs in the environment RionFunction prepares and turns a return into the call's value.
+     */
+    static class FunctionBody extends Node {
+        final Interpreter interpreter;
+        final Node[] statements;
+
+        FunctionBody(Interpreter interpreter, Node[] statements) {
+            this.interpreter = interpreter;
+            this.statements = statements;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            for (Node statement : statements) {
+                // a return directly in the body does not need to pass through anything
+                if (statement instanceof Return r) {
+                    return r.value == null ? null : r.value.execute(environment);
+                }
+                if (statement.executeStatement(environment) == Completion.RETURN) {
+                    Object value = interpreter.returnValue;
+                    interpreter.returnValue = null;
+                    return value;
+                }
+            }
+            return null;
+        }
+    }
+
+    static class If extends Node {
+        final Node condition;
+        final Node thenBranch;
+        final Node elseBranch;
+
+        If(Node condition, Node thenBranch, Node elseBranch) {
+            this.condition = condition;
+            this.thenBranch = thenBranch;
+            this.elseBranch = elseBranch;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            executeStatement(environment);
+            return null;
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            executeStatement(environment);
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            if (Operators.isTruthy(condition.execute(environment))) {
+                return thenBranch.executeStatement(environment);
+            } else if (elseBranch != null) {
+                return elseBranch.executeStatement(environment);
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static class While extends Node {
+        final Node condition;
+        final Node body;
+
+        While(Node condition, Node body) {
+            this.condition = condition;
+            this.body = body;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            executeStatement(environment);
+            return null;
+        }
+
+        @Override
+        void executeVoid(Environment environment) {
+            executeStatement(environment);
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            while (Operators.isTruthy(condition.execute(environment))) {
+                Completion completion = body.executeStatement(environment);
+                if (completion == Completion.BREAK) {
+                    break;
+                } else if (completion == Completion.RETURN) {
+                    return completion;
+                }
+            }
+            return Completion.NORMAL;
+        }
+    }
+
+    static class Return extends Node {
+        final Interpreter interpreter;
+        final Node value;
+
+        Return(Interpreter interpreter, Node value) {
+            this.interpreter = interpreter;
+            this.value = value;
+        }
+
+        @Override
+        Object execute(Environment environment) {
+            executeStatement(environment);
+            return null;
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            interpreter.returnValue = value == null ? null : value.execute(environment);
+            return Completion.RETURN;
+        }
+    }
+
+    static class Break extends Node {
+        @Override
+        Object execute(Environment environment) {
+            return null;
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            return Completion.BREAK;
+        }
+    }
+
+    static class Continue extends Node {
+        @Override
+        Object execute(Environment environment) {
+            return null;
+        }
+
+        @Override
+        Completion executeStatement(Environment environment) {
+            return Completion.CONTINUE;
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Turns resolved statements into a tree of executable nodes. All decisions the interpreter makes on every
+ * evaluation (which operator, whether a variable is local and where it lives) are made once here.
+ */
+public class NodeCompiler implements Expr.Visitor<Node>, Stmt.Visitor<Node> {
+    private final Interpreter interpreter;
+    // counts the executions of every node when set, see NodeHistogram
+    private final NodeHistogram histogram;
+
+    public NodeCompiler(Interpreter interpreter) {
+        this(interpreter, null);
+    }
+
+    NodeCompiler(Interpreter interpreter, NodeHistogram histogram) {
+        this.interpreter = interpreter;
+        this.histogram = histogram;
+    }
+
+    Node[] compile(List<Stmt> statements) {
+        Node[] nodes = new Node[statements.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(statements.get(i));
+        }
+        return nodes;
+    }
+
+    @Override
+    public Node visitBinaryExpression(Expr.Binary expr) {
+        if (expr.operands == TypeInference.Type.STRING) {
+            List<Node> parts = new ArrayList<>();
+            concatenation(expr, parts);
+            return new Node.Concat(interpreter, parts.toArray(new Node[0]));
+        }
+        Token operator = expr.operator;
+        if (isComparison(operator) && expr.left instanceof Expr.Variable left && isLocal(left)
+                && expr.right instanceof Expr.Variable right && isLocal(right)) {
+            return new Node.CompareLocals(operator, left.depth, left.slot, right.depth, right.slot);
+        }
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+        return switch (operator.type) {
+            case MINUS -> new Node.Subtract(operator, left, right);
+            case SLASH -> new Node.Divide(operator, left, right);
+            case MODULO -> new Node.Modulo(operator, left, right);
+            case GREATER -> new Node.Greater(operator, left, right);
+            case GREATER_EQUAL -> new Node.GreaterEqual(operator, left, right);
+            case LESS -> new Node.Less(operator, left, right);
+            case LESS_EQUAL -> new Node.LessEqual(operator, left, right);
+            case BANG_EQUAL -> new Node.NotEqual(left, right);
+            case EQUAL_EQUAL -> new Node.Equal(left, right);
+            case STAR -> new Node.Multiply(interpreter, operator, left, right);
+            case PLUS -> new Node.Add(interpreter, operator, left, right);
+            default -> new Node.Literal(null);
+        };
+    }
+
+    // the operands of a chain of '+' that a proven string runs through, in the order the chain adds them
+    private void concatenation(Expr expr, List<Node> parts) {
+        if (expr instanceof Expr.Binary binary && binary.operands == TypeInference.Type.STRING) {
+            concatenation(binary.left, parts);
+            parts.add(compile(binary.right));
+        } else {
+            parts.add(compile(expr));
+        }
+    }
+
+    @Override
+    public Node visitLogicalExpression(Expr.Logical expr) {
+        Node left = compile(expr.left);
+        Node right = compile(expr.right);
+        return switch (expr.operator.type) {
+            case OR -> new Node.Or(left, right);
+            case AND -> new Node.And(left, right);
+            default -> new Node.Literal(null);
+        };
+    }
+
+    @Override
+    public Node visitGroupingExpression(Expr.Grouping expr) {
+        return expr.expression.accept(this);
+    }
+
+    @Override
+    public Node visitLiteralExpression(Expr.Literal expr) {
+        return new Node.Literal(expr.value);
+    }
+
+    @Override
+    public Node visitThisExpression(Expr.This expr) {
+        return variable(expr, expr.keyword);
+    }
+
+    @Override
+    public Node visitUnaryExpression(Expr.Unary expr) {
+        Node right = compile(expr.right);
+        return switch (expr.operator.type) {
+            case BANG -> new Node.Not(right);
+            case MINUS -> new Node.Negate(right);
+            default -> new Node.Literal(null);
+        };
+    }
+
+    @Override
+    public Node visitVariableExpression(Expr.Variable expr) {
+        return variable(expr, expr.name);
+    }
+
+    @Override
+    public Node visitAssignExpression(Expr.Assign expr) {
+        if (!expr.isGlobal() && expr.value instanceof Expr.Binary binary && binary.operands != TypeInference.Type.STRING
+                && isLocal(binary.left, expr.depth, expr.slot)) {
+            Token operator = binary.operator;
+            if (binary.right instanceof Expr.Literal literal && literal.value instanceof Integer step
+                    && step != Integer.MIN_VALUE
+                    && (operator.type == TokenType.PLUS || operator.type == TokenType.MINUS)) {
+                return new Node.IncrementLocal(interpreter, operator, expr.depth, expr.slot, step);
+            }
+            if (operator.type == TokenType.PLUS) {
+                return new Node.AccumulateLocal(interpreter, operator, expr.depth, expr.slot, compile(binary.right));
+            }
+        }
+        Node value = compile(expr.value);
+        if (expr.isGlobal()) {
+            return new Node.GlobalSet(expr.cell, expr.name, value);
+        }
+        return new Node.LocalSet(expr.depth, expr.slot, value);
+    }
+
+    @Override
+    public Node visitIndexAssignExpression(Expr.IndexAssign expr) {
+        return new Node.IndexSet(interpreter, expr.squareBrace, compile(expr.indexee), compile(expr.index), compile(expr.value));
+    }
+
+    @Override
+    public Node visitCallExpression(Expr.Call expr) {
+        if (expr.callee instanceof Expr.Get get) {
+            return new Node.Invoke(interpreter, expr.paren, get.cache, compile(get.object), compileAll(expr.arguments));
+        }
+        return new Node.Call(interpreter, expr.paren, compile(expr.callee), compileAll(expr.arguments));
+    }
+
+    @Override
+    public Node visitInlineExpression(Expr.Inline expr) {
+        return new Node.Inline(expr, compileAll(expr.call.arguments), compile(expr.body), compile(expr.call));
+    }
+
+    @Override
+    public Node visitAppendExpression(Expr.Append expr) {
+        return new Node.Append(interpreter, compile(expr.target), expr.builder,
+                expr.operators.toArray(new Token[0]), compileAll(expr.parts));
+    }
+
+    @Override
+    public Node visitHoistedExpression(Expr.Hoisted expr) {
+        return new Node.Hoisted(compile(expr.value), expr.hoisted,
+                expr.receiver == null ? null : compile(expr.receiver));
+    }
+
+    @Override
+    public Node visitIndexingExpression(Expr.Indexing expr) {
+        if (expr.indexee instanceof Expr.Variable indexee && isLocal(indexee)
+                && expr.index instanceof Expr.Variable index && isLocal(index)) {
+            return new Node.IndexLocals(interpreter, expr.squareBrace, indexee.depth, indexee.slot, index.depth, index.slot);
+        }
+        return new Node.Index(interpreter, expr.squareBrace, compile(expr.indexee), compile(expr.index));
+    }
+
+    @Override
+    public Node visitGetExpression(Expr.Get expr) {
+        return new Node.GetProperty(interpreter, expr.cache, compile(expr.object));
+    }
+
+    @Override
+    public Node visitSetExpression(Expr.Set expr) {
+        return new Node.SetProperty(interpreter, expr.cache, compile(expr.object), compile(expr.value));
+    }
+
+    @Override
+    public Node visitAnonFunctionExpression(Expr.AnonFunc expr) {
+        compileFunction(expr.declaration);
+        return new Node.Closure(expr.declaration);
+    }
+
+    @Override
+    public Node visitArrayExpression(Expr.Array expr) {
+        return new Node.ArrayLiteral(interpreter, compileAll(expr.elements));
+    }
+
+    @Override
+    public Node visitMapExpression(Expr.Map expr) {
+        return new Node.MapLiteral(interpreter, expr.brace, compileAll(expr.keys), compileAll(expr.values));
+    }
+
+    @Override
+    public Node visitSuperExpression(Expr.Super expr) {
+        if (expr.method != null) {
+            return new Node.SuperGet(interpreter, expr);
+        } else if (expr.arguments != null) {
+            return new Node.SuperInit(interpreter, expr, compileAll(expr.arguments));
+        }
+        return new Node.Literal(null);
+    }
+
+    @Override
+    public Node visitExpressionStmt(Stmt.Expression stmt) {
+        return new Node.ExpressionStatement(compile(stmt.expression));
+    }
+
+    @Override
+    public Node visitVarStmt(Stmt.Var stmt) {
+        Node initializer = stmt.initializer == null ? null : compile(stmt.initializer);
+        return new Node.Define(stmt.name.lexeme, initializer);
+    }
+
+    @Override
+    public Node visitClassStmt(Stmt.Class stmt) {
+        Node superClass = stmt.superClass == null ? null : compile(stmt.superClass);
+        for (Stmt.Function method : stmt.methods) {
+            compileFunction(method);
+        }
+        return new Node.ClassDeclaration(interpreter, stmt, superClass);
+    }
+
+    @Override
+    public Node visitFunctionStmt(Stmt.Function stmt) {
+        compileFunction(stmt);
+        return new Node.FunctionDeclaration(stmt);
+    }
+
+    @Override
+    public Node visitBlockStmt(Stmt.Block stmt) {
+        return new Node.Block(compile(stmt.statements), stmt.slotCount);
+    }
+
+    @Override
+    public Node visitIfStmt(Stmt.If stmt) {
+        Node elseBranch = stmt.elseBranch == null ? null : compile(stmt.elseBranch);
+        return new Node.If(compile(stmt.condition), compile(stmt.thenBranch), elseBranch);
+    }
+
+    @Override
+    public Node visitWhileStmt(Stmt.While stmt) {
+        return new Node.While(compile(stmt.condition), compile(stmt.body));
+    }
+
+    @Override
+    public Node visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.isTailCall) {
+            Expr.Call call = (Expr.Call) stmt.expression;
+            Node tailCall = new Node.TailCall(interpreter, call.paren, compile(call.callee), compileAll(call.arguments));
+            return new Node.Return(interpreter, counted(tailCall));
+        }
+        return new Node.Return(interpreter, stmt.expression == null ? null : compile(stmt.expression));
+    }
+
+    @Override
+    public Node visitBreakStmt(Stmt.Break stmt) {
+        return new Node.Break();
+    }
+
+    @Override
+    public Node visitContinueStmt(Stmt.Continue stmt) {
+        return new Node.Continue();
+    }
+
+    private Node compile(Stmt stmt) {
+        return counted(stmt.accept(this));
+    }
+
+    private Node compile(Expr expr) {
+        return counted(expr.accept(this));
+    }
+
+    private Node counted(Node node) {
+        return histogram == null ? node : new Node.Counted(node, histogram.counter(node));
+    }
+
+    private static boolean isComparison(Token operator) {
+        return switch (operator.type) {
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isLocal(Expr.Variable variable) {
+        return !variable.isGlobal();
+    }
+
+    private static boolean isLocal(Expr expr, int depth, int slot) {
+        return expr instanceof Expr.Variable variable && isLocal(variable) && variable.depth == depth
+                && variable.slot == slot;
+    }
+
+    private Node[] compileAll(List<Expr> exprs) {
+        Node[] nodes = new Node[exprs.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = compile(exprs.get(i));
+        }
+        return nodes;
+    }
+
+    /*
+     * the body block is compiled without its own scope, RionFunction creates the body environment before running it.
+     */
+    private void compileFunction(Stmt.Function function) {
+        function.node = new Node.FunctionBody(interpreter, compile(((Stmt.Block) function.body).statements));
+    }
+
+    private Node variable(Expr.Reference expr, Token name) {
+        if (expr.isGlobal()) {
+            return new Node.GlobalGet(expr.cell, name);
+        }
+        return new Node.LocalGet(expr.depth, expr.slot);
+    }
+}
@@ -0,0 +1,59 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * How many times each kind of node ran, collected when the node engine runs a program with --node-histogram. A
+ * fused node also reports the dispatches it saved, one for every node of the plain tree it does the work of besides
+ * itself, which is what tells whether a fusion pays off on the program.
+ */
+final class NodeHistogram {
+    private final Map<Class<?>, Counter> counters = new LinkedHashMap<>();
+
+    static final class Counter {
+        final String name;
+        final int fusedNodes;
+        long executions;
+
+        Counter(String name, int fusedNodes) {
+            this.name = name;
+            this.fusedNodes = fusedNodes;
+        }
+
+        long saved() {
+            return executions * (fusedNodes - 1);
+        }
+    }
+
+    Counter counter(Node node) {
+        return counters.computeIfAbsent(node.getClass(),
+                kind -> new Counter(kind.getSimpleName(), node.fusedNodes()));
+    }
+
+    String dump() {
+        List<Counter> ran = new ArrayList<>();
+        long total = 0;
+        long saved = 0;
+        for (Counter counter : counters.values()) {
+            if (counter.executions > 0) {
+                ran.add(counter);
+                total += counter.executions;
+                saved += counter.saved();
+            }
+        }
+        ran.sort((a, b) -> Long.compare(b.executions, a.executions));
+        StringBuilder dump = new StringBuilder("node executions:");
+        for (Counter counter : ran) {
+            dump.append(String.format("%n  %-20s %12d %6.2f%%", counter.name, counter.executions,
+                    100.0 * counter.executions / total));
+            if (counter.fusedNodes > 1) {
+                dump.append(String.format("  saves %d dispatches", counter.saved()));
+            }
+        }
+        dump.append(String.format("%n%d nodes ran, fused nodes saved %d dispatches", total, saved));
+        return dump.toString();
+    }
+}
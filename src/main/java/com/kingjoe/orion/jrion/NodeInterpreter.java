@@ -0,0 +1,45 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.List;
+
+/*
+ * Runs programs as trees of pre-bound nodes built by the NodeCompiler.
+ */
+public class NodeInterpreter {
+    private final Interpreter interpreter;
+    private final NodeHistogram histogram;
+
+    public NodeInterpreter(Interpreter interpreter) {
+        this(interpreter, null);
+    }
+
+    NodeInterpreter(Interpreter interpreter, NodeHistogram histogram) {
+        this.interpreter = interpreter;
+        this.histogram = histogram;
+    }
+
+    public void interpret(List<Stmt> statements) {
+        Node[] nodes = new NodeCompiler(interpreter, histogram).compile(statements);
+        try {
+            for (Node node : nodes) {
+                node.execute(interpreter.globals);
+            }
+        } catch (RuntimeError e) {
+            Rion.runtimeError(e);
+        }
+    }
+
+    public void repl(List<Stmt> statements) {
+        Node[] nodes = new NodeCompiler(interpreter, histogram).compile(statements);
+        try {
+            for (Node node : nodes) {
+                Object value = node.execute(interpreter.globals);
+                if (value != null) {
+                    System.out.println(interpreter.stringify(value));
+                }
+            }
+        } catch (RuntimeError e) {
+            Rion.runtimeError(e);
+        }
+    }
+}
@@ -0,0 +1,385 @@
+package com.kingjoe.orion.jrion;
+
+import com.kingjoe.orion.jrion.builtin.RionArray;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Semantics of the unary and binary operators, shared by every execution engine so that the
+ * tree-walking interpreter and the other engines can never disagree on what an operator means.
+ */
+final class Operators {
+
+    private Operators() {
+    }
+
+    static Object subtract(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return subtract(a, b);
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a - b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) - toDouble(right);
+    }
+
+    static Object divide(Token operator, Object left, Object right) {
+        checkNumberOperand(operator, left, right);
+        if (toDouble(right) == 0) {
+            throw new RuntimeError(operator, "Invalid operation, division by zero.");
+        }
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return divide(a, b);
+        }
+        return toDouble(left) / toDouble(right);
+    }
+
+    static Object modulo(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return modulo(a, b);
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a % b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) % toDouble(right);
+    }
+
+    static boolean greater(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a > b;
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a > b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) > toDouble(right);
+    }
+
+    static boolean greaterEqual(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a >= b;
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a >= b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) >= toDouble(right);
+    }
+
+    static boolean less(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a < b;
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a < b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) < toDouble(right);
+    }
+
+    static boolean lessEqual(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a <= b;
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a <= b;
+        }
+        checkNumberOperand(operator, left, right);
+        return toDouble(left) <= toDouble(right);
+    }
+
+    /*
+     * Integer arithmetic. Numbers are integers while they are integral and fit an int, and doubles otherwise, and an
+     * operation on two integers gives exactly the value the same operation on doubles would. A result that does not
+     * fit an int, is fractional or is a negative zero comes back as a double.
+     */
+    static Object add(int a, int b) {
+        return number((long) a + b);
+    }
+
+    static Object subtract(int a, int b) {
+        return number((long) a - b);
+    }
+
+    static Object multiply(int a, int b) {
+        if ((a == 0 && b < 0) || (b == 0 && a < 0)) {
+            return -0.0;
+        }
+        return number((long) a * b);
+    }
+
+    // the divisor is never zero, division by zero is reported before
+    static Object divide(int a, int b) {
+        if (a % b != 0 || (a == 0 && b < 0)) {
+            return (double) a / b;
+        }
+        return number((long) a / b);
+    }
+
+    static Object modulo(int a, int b) {
+        if (b == 0) {
+            return Double.NaN;
+        }
+        int result = a % b;
+        if (result == 0 && a < 0) {
+            return -0.0;
+        }
+        return result;
+    }
+
+    static Object negate(int a) {
+        if (a == 0) {
+            return -0.0;
+        }
+        return number(-(long) a);
+    }
+
+    private static Object number(long value) {
+        if (value == (int) value) {
+            return (int) value;
+        }
+        return (double) value;
+    }
+
+    static double toDouble(Object number) {
+        if (number instanceof Integer integer) {
+            return integer;
+        }
+        return (double) number;
+    }
+
+    static Object multiply(
+            Interpreter interpreter,
+            Token operator,
+            Object left,
+            Object right
+    ) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return multiply(a, b);
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a * b;
+        }
+        if (isNumber(left) && isNumber(right)) {
+            return toDouble(left) * toDouble(right);
+        }
+        if (isString(left) && interpreter.isWholeNumber(right)) {
+            int count = Integer.parseInt(interpreter.stringify(right));
+            return ((String) left).repeat(count);
+        }
+        if (left instanceof RionArray array && interpreter.isWholeNumber(right)) {
+            return initializedFixedSizeArray(interpreter, operator, array, right);
+        }
+        throw new RuntimeError(operator, "cannot perform '*' operation on the provided type");
+    }
+
+    static Object add(
+            Interpreter interpreter,
+            Token operator,
+            Object left,
+            Object right
+    ) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return add(a, b);
+        }
+        if (left instanceof Double a && right instanceof Double b) {
+            return a + b;
+        }
+        if (isNumber(left) && isNumber(right)) {
+            return toDouble(left) + toDouble(right);
+        }
+        if (isString(left) && isString(right)) {
+            return left.toString() + right;
+        }
+        if (isString(left)) {
+            return left + interpreter.stringify(right);
+        }
+        if (isString(right)) {
+            return interpreter.stringify(left) + right;
+        }
+        throw new RuntimeError(operator, "cannot perform  '+' operation on the provided type");
+    }
+
+    /*
+     * Operations on operands the TypeInference proved to be numbers, they are not checked again.
+     */
+    static Object addNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return add(a, b);
+        }
+        return toDouble(left) + toDouble(right);
+    }
+
+    static Object subtractNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return subtract(a, b);
+        }
+        return toDouble(left) - toDouble(right);
+    }
+
+    static Object multiplyNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return multiply(a, b);
+        }
+        return toDouble(left) * toDouble(right);
+    }
+
+    static Object divideNumbers(Token operator, Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b && b != 0) {
+            return divide(a, b);
+        }
+        double divisor = toDouble(right);
+        if (divisor == 0) {
+            throw new RuntimeError(operator, "Invalid operation, division by zero.");
+        }
+        return toDouble(left) / divisor;
+    }
+
+    static Object moduloNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return modulo(a, b);
+        }
+        return toDouble(left) % toDouble(right);
+    }
+
+    static boolean greaterNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a > b;
+        }
+        return toDouble(left) > toDouble(right);
+    }
+
+    static boolean greaterEqualNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a >= b;
+        }
+        return toDouble(left) >= toDouble(right);
+    }
+
+    static boolean lessNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a < b;
+        }
+        return toDouble(left) < toDouble(right);
+    }
+
+    static boolean lessEqualNumbers(Object left, Object right) {
+        if (left instanceof Integer a && right instanceof Integer b) {
+            return a <= b;
+        }
+        return toDouble(left) <= toDouble(right);
+    }
+
+    /*
+     * adds what a value reads as in a string it is concatenated to, a chain of '+' with a proven string in it is
+     * built this way in a single builder
+     */
+    static void appendText(Interpreter interpreter, StringBuilder text, Object value) {
+        if (value instanceof String string) {
+            text.append(string);
+        } else if (value instanceof Integer integer && integer > -10_000_000 && integer < 10_000_000) {
+            text.append((int) integer);
+        } else {
+            text.append(interpreter.stringify(value));
+        }
+    }
+
+    /*
+     * joins the text of the values of a chain of '+' with a proven string in it, every part is turned into text first
+     * so the result is built with a single copy of each part and no intermediate strings
+     */
+    static String concatenate(Interpreter interpreter, Object[] parts, int from, int count) {
+        int length = 0;
+        for (int i = from; i < from + count; i++) {
+            String text = parts[i] instanceof String string ? string : interpreter.stringify(parts[i]);
+            parts[i] = text;
+            length += text.length();
+        }
+        StringBuilder text = new StringBuilder(length);
+        for (int i = from; i < from + count; i++) {
+            text.append((String) parts[i]);
+            parts[i] = null;
+        }
+        return text.toString();
+    }
+
+    static Object negate(Object right) {
+        if (right instanceof Integer integer) {
+            return negate((int) integer);
+        }
+        return -(double) right;
+    }
+
+    static boolean isTruthy(Object value) {
+        if (value == null) {
+            return false;
+        }
+        if (value instanceof Boolean) {
+            return (boolean) value;
+        }
+        return true;
+    }
+
+    static boolean isEqual(
+            Object o1,
+            Object o2
+    ) {
+        if (o1 == null && o2 == null) {
+            return true;
+        }
+        if (o1 == null) {
+            return false;
+        }
+        if (o1 instanceof Integer && o2 instanceof Double || o1 instanceof Double && o2 instanceof Integer) {
+            // same as Double.equals, so 0 and -0 stay distinct
+            return Double.doubleToLongBits(toDouble(o1)) == Double.doubleToLongBits(toDouble(o2));
+        }
+        return o1.equals(o2);
+    }
+
+    private static boolean isNumber(Object o) {
+        if (o == null) {
+            return false;
+        }
+        return o instanceof Double || o instanceof Integer;
+    }
+
+    private static boolean isString(Object o) {
+        if (o == null) {
+            return false;
+        }
+        return o instanceof String;
+    }
+
+    private static void checkNumberOperand(
+            Token operator,
+            Object left,
+            Object right
+    ) {
+        if (isNumber(left) && isNumber(right)) {
+            return;
+        }
+        throw new RuntimeError(operator, "Operands must be a number.");
+    }
+
+    private static Object initializedFixedSizeArray(
+            Interpreter interpreter,
+            Token operator,
+            RionArray array,
+            Object right
+    ) {
+        if (array.size() != 1) {
+            throw new RuntimeError(operator, "must provide only one initial value for array initializer.");
+        }
+        int length = Integer.parseInt(interpreter.stringify(right));
+        Object element = array.getElements().getFirst();
+        List<Object> elements = new ArrayList<>();
+        for (int i = 0; i < length; i++) {
+            elements.add(element);
+        }
+        return new RionArray(interpreter, elements);
+    }
+}
@@ -0,0 +1,1107 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Rewrites resolved statements before they run: operators whose operands are all literals are folded into a
+ * literal, an if whose condition is a literal keeps only the branch that runs, a while whose condition is a falsy
+ * literal goes away, and so do the statements of a block after a return, break or continue.
+ *
+ * Folding goes through Operators, the same code that evaluates the operator at runtime, so a folded value is
+ * exactly the one the program would have computed. An operator that fails on its literals is left as it is to
+ * report the error when it runs. Nodes are only rebuilt when something below them changed, and a rebuilt node
+ * takes over what the Resolver recorded on the one it replaces.
+ *
+ * Loops in a local scope also get two rewrites that store values in slots added to the frame of that scope. The
+ * expressions of a loop's condition and body that can't change while the loop runs are kept in a slot the first
+ * time they are computed, and a multiple of an integer induction variable is kept up to date in a slot next to the
+ * variable instead of being multiplied out on every use, see optimizeLoop.
+ *
+ * A call of a small global function is replaced with a copy of the function's body when it is only a returned
+ * expression, see inline.
+ */
+public class Optimizer implements Expr.Visitor<Expr>, Stmt.Visitor<Stmt> {
+    private final Interpreter interpreter;
+    // local scopes around the statement being optimized, innermost last, so a local at depth d from the innermost
+    // scope belongs to scopes.get(scopes.size() - 1 - d)
+    private final List<Scope> scopes = new ArrayList<>();
+    // induction variables of the loops being optimized
+    private final List<Induction> inductions = new ArrayList<>();
+    // global functions whose calls are inlined by the cell of the function, and the functions being inlined
+    private final Map<Environment.Cell, Stmt.Function> inlinable = new HashMap<>();
+    private final Set<Stmt.Function> inlining = new HashSet<>();
+    // the optimized version of the inlinable functions, so their declaration stays the one the calls check for
+    private final Map<Stmt.Function, Stmt.Function> optimizedFunctions = new HashMap<>();
+    // first slot of the arguments of the call whose function body is being inlined, its parameters read them there
+    private int argumentSlot = -1;
+    // largest number of nodes in the returned expression of an inlined function
+    private static final int INLINE_SIZE = 16;
+
+    public Optimizer(Interpreter interpreter) {
+        this.interpreter = interpreter;
+    }
+
+    public List<Stmt> optimize(List<Stmt> statements) {
+        findInlinableFunctions(statements);
+        return optimizeAll(statements, null);
+    }
+
+    @Override
+    public Expr visitBinaryExpression(Expr.Binary expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        Expr.Variable multiple = multiple(expr.operator, left, right);
+        if (multiple != null) {
+            return multiple;
+        }
+        if (left instanceof Expr.Literal a && right instanceof Expr.Literal b) {
+            try {
+                return new Expr.Literal(fold(expr.operator, a.value, b.value));
+            } catch (RuntimeError error) {
+                // left for the program to report when it gets there
+            }
+        }
+        if (left == expr.left && right == expr.right) {
+            return expr;
+        }
+        return new Expr.Binary(left, expr.operator, right);
+    }
+
+    private Object fold(Token operator, Object left, Object right) {
+        return switch (operator.type) {
+            case MINUS -> Operators.subtract(operator, left, right);
+            case SLASH -> Operators.divide(operator, left, right);
+            case MODULO -> Operators.modulo(operator, left, right);
+            case GREATER -> Operators.greater(operator, left, right);
+            case GREATER_EQUAL -> Operators.greaterEqual(operator, left, right);
+            case LESS -> Operators.less(operator, left, right);
+            case LESS_EQUAL -> Operators.lessEqual(operator, left, right);
+            case BANG_EQUAL -> !Operators.isEqual(left, right);
+            case EQUAL_EQUAL -> Operators.isEqual(left, right);
+            case STAR -> Operators.multiply(interpreter, operator, left, right);
+            case PLUS -> Operators.add(interpreter, operator, left, right);
+            default -> throw new RuntimeError(operator, "Unknown operator");
+        };
+    }
+
+    /*
+     * 'and' and 'or' evaluate to a boolean, a literal left operand that decides it skips the right one entirely
+     */
+    @Override
+    public Expr visitLogicalExpression(Expr.Logical expr) {
+        Expr left = optimize(expr.left);
+        Expr right = optimize(expr.right);
+        if (left instanceof Expr.Literal literal) {
+            boolean isOr = expr.operator.type == TokenType.OR;
+            if (Operators.isTruthy(literal.value) == isOr) {
+                return new Expr.Literal(isOr);
+            }
+            if (right instanceof Expr.Literal value) {
+                return new Expr.Literal(Operators.isTruthy(value.value));
+            }
+        }
+        if (left == expr.left && right == expr.right) {
+            return expr;
+        }
+        return new Expr.Logical(left, expr.operator, right);
+    }
+
+    @Override
+    public Expr visitGroupingExpression(Expr.Grouping expr) {
+        Expr expression = optimize(expr.expression);
+        if (expression instanceof Expr.Literal) {
+            return expression;
+        }
+        return expression == expr.expression ? expr : new Expr.Grouping(expression);
+    }
+
+    @Override
+    public Expr visitLiteralExpression(Expr.Literal expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitThisExpression(Expr.This expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitUnaryExpression(Expr.Unary expr) {
+        Expr right = optimize(expr.right);
+        if (right instanceof Expr.Literal literal) {
+            if (expr.operator.type == TokenType.BANG) {
+                return new Expr.Literal(!Operators.isTruthy(literal.value));
+            }
+            if (literal.value instanceof Integer || literal.value instanceof Double) {
+                return new Expr.Literal(Operators.negate(literal.value));
+            }
+        }
+        return right == expr.right ? expr : new Expr.Unary(expr.operator, right);
+    }
+
+    @Override
+    public Expr visitVariableExpression(Expr.Variable expr) {
+        if (argumentSlot >= 0 && !expr.isGlobal()) {
+            return local(expr.name, 0, argumentSlot + expr.slot);
+        }
+        return expr;
+    }
+
+    @Override
+    public Expr visitAssignExpression(Expr.Assign expr) {
+        Expr value = optimize(expr.value);
+        if (value == expr.value) {
+            return expr;
+        }
+        Expr.Assign assign = new Expr.Assign(expr.name, value);
+        assign.cell = expr.cell;
+        assign.depth = expr.depth;
+        assign.slot = expr.slot;
+        return assign;
+    }
+
+    @Override
+    public Expr visitIndexAssignExpression(Expr.IndexAssign expr) {
+        Expr indexee = optimize(expr.indexee);
+        Expr index = optimize(expr.index);
+        Expr value = optimize(expr.value);
+        if (indexee == expr.indexee && index == expr.index && value == expr.value) {
+            return expr;
+        }
+        return new Expr.IndexAssign(expr.squareBrace, indexee, index, value);
+    }
+
+    @Override
+    public Expr visitCallExpression(Expr.Call expr) {
+        Expr callee = optimize(expr.callee);
+        List<Expr> arguments = optimizeExpressions(expr.arguments);
+        Expr.Call call = callee == expr.callee && arguments == expr.arguments
+                ? expr : new Expr.Call(callee, expr.paren, arguments);
+        if (callee instanceof Expr.Variable variable && variable.isGlobal()) {
+            Stmt.Function function = inlinable.get(variable.cell);
+            if (function != null && function.parameters.size() == arguments.size() && !inlining.contains(function)
+                    && (arguments.isEmpty() || !scopes.isEmpty())) {
+                return inline(call, function);
+            }
+        }
+        return call;
+    }
+
+    @Override
+    public Expr visitIndexingExpression(Expr.Indexing expr) {
+        Expr indexee = optimize(expr.indexee);
+        Expr index = optimize(expr.index);
+        if (indexee == expr.indexee && index == expr.index) {
+            return expr;
+        }
+        return new Expr.Indexing(indexee, expr.squareBrace, index);
+    }
+
+    @Override
+    public Expr visitGetExpression(Expr.Get expr) {
+        Expr object = optimize(expr.object);
+        if (object == expr.object) {
+            return expr;
+        }
+        Expr.Get get = new Expr.Get(object, expr.property);
+        get.cache.access = expr.cache.access;
+        return get;
+    }
+
+    @Override
+    public Expr visitSetExpression(Expr.Set expr) {
+        Expr object = optimize(expr.object);
+        Expr value = optimize(expr.value);
+        if (object == expr.object && value == expr.value) {
+            return expr;
+        }
+        Expr.Set set = new Expr.Set(object, expr.property, value);
+        set.cache.access = expr.cache.access;
+        return set;
+    }
+
+    @Override
+    public Expr visitAnonFunctionExpression(Expr.AnonFunc expr) {
+        Stmt.Block body = optimizeBlock((Stmt.Block) expr.body);
+        return body == expr.body ? expr : new Expr.AnonFunc(expr.paren, expr.parameters, body);
+    }
+
+    @Override
+    public Expr visitArrayExpression(Expr.Array expr) {
+        List<Expr> elements = optimizeExpressions(expr.elements);
+        return elements == expr.elements ? expr : new Expr.Array(expr.squareBrace, elements);
+    }
+
+    @Override
+    public Expr visitMapExpression(Expr.Map expr) {
+        List<Expr> keys = optimizeExpressions(expr.keys);
+        List<Expr> values = optimizeExpressions(expr.values);
+        if (keys == expr.keys && values == expr.values) {
+            return expr;
+        }
+        return new Expr.Map(expr.brace, keys, values);
+    }
+
+    @Override
+    public Expr visitSuperExpression(Expr.Super expr) {
+        if (expr.arguments == null) {
+            return expr;
+        }
+        List<Expr> arguments = optimizeExpressions(expr.arguments);
+        return arguments == expr.arguments ? expr : new Expr.Super(expr.keyword, expr.paren, arguments);
+    }
+
+    @Override
+    public Expr visitInlineExpression(Expr.Inline expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitAppendExpression(Expr.Append expr) {
+        return expr;
+    }
+
+    @Override
+    public Expr visitHoistedExpression(Expr.Hoisted expr) {
+        return expr;
+    }
+
+    @Override
+    public Stmt visitExpressionStmt(Stmt.Expression stmt) {
+        Expr expression = optimize(stmt.expression);
+        return expression == stmt.expression ? stmt : new Stmt.Expression(expression);
+    }
+
+    @Override
+    public Stmt visitVarStmt(Stmt.Var stmt) {
+        if (stmt.initializer == null) {
+            return stmt;
+        }
+        Expr initializer = optimize(stmt.initializer);
+        return initializer == stmt.initializer ? stmt : new Stmt.Var(stmt.name, initializer);
+    }
+
+    @Override
+    public Stmt visitClassStmt(Stmt.Class stmt) {
+        List<Stmt.Var> fields = new ArrayList<>(stmt.fields.size());
+        boolean changed = false;
+        for (Stmt.Var field : stmt.fields) {
+            Stmt.Var optimized = (Stmt.Var) optimize(field);
+            changed |= optimized != field;
+            fields.add(optimized);
+        }
+        List<Stmt.Function> methods = new ArrayList<>(stmt.methods.size());
+        for (Stmt.Function method : stmt.methods) {
+            Stmt.Function optimized = (Stmt.Function) optimize(method);
+            changed |= optimized != method;
+            methods.add(optimized);
+        }
+        return changed ? new Stmt.Class(stmt.name, stmt.superClass, fields, methods) : stmt;
+    }
+
+    @Override
+    public Stmt visitFunctionStmt(Stmt.Function stmt) {
+        Stmt.Function optimized = optimizedFunctions.get(stmt);
+        if (optimized != null) {
+            return optimized;
+        }
+        Stmt.Block body = optimizeBlock((Stmt.Block) stmt.body);
+        return body == stmt.body ? stmt : new Stmt.Function(stmt.name, stmt.parameters, body);
+    }
+
+    @Override
+    public Stmt visitBlockStmt(Stmt.Block stmt) {
+        return optimizeBlock(stmt);
+    }
+
+    /*
+     * a branch that never runs is dropped, the statement disappears when no branch is left
+     */
+    @Override
+    public Stmt visitIfStmt(Stmt.If stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal) {
+            if (Operators.isTruthy(literal.value)) {
+                return optimize(stmt.thenBranch);
+            }
+            return stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        }
+        Stmt thenBranch = optimize(stmt.thenBranch);
+        Stmt elseBranch = stmt.elseBranch == null ? null : optimize(stmt.elseBranch);
+        if (thenBranch == null) {
+            thenBranch = new Stmt.Block(new ArrayList<>());
+        }
+        if (condition == stmt.condition && thenBranch == stmt.thenBranch && elseBranch == stmt.elseBranch) {
+            return stmt;
+        }
+        return new Stmt.If(condition, thenBranch, elseBranch, stmt.keyword);
+    }
+
+    @Override
+    public Stmt visitWhileStmt(Stmt.While stmt) {
+        Expr condition = optimize(stmt.condition);
+        if (condition instanceof Expr.Literal literal && !Operators.isTruthy(literal.value)) {
+            return null;
+        }
+        Stmt body = optimize(stmt.body);
+        if (condition == stmt.condition && body == stmt.body) {
+            return stmt;
+        }
+        return new Stmt.While(condition, body, stmt.keyword);
+    }
+
+    @Override
+    public Stmt visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.expression == null) {
+            return stmt;
+        }
+        Expr expression = optimize(stmt.expression);
+        if (expression == stmt.expression) {
+            return stmt;
+        }
+        Stmt.Return optimized = new Stmt.Return(stmt.keyword, expression);
+        // an inlined call is no longer a call
+        optimized.isTailCall = stmt.isTailCall && expression instanceof Expr.Call;
+        return optimized;
+    }
+
+    @Override
+    public Stmt visitBreakStmt(Stmt.Break stmt) {
+        return stmt;
+    }
+
+    @Override
+    public Stmt visitContinueStmt(Stmt.Continue stmt) {
+        return stmt;
+    }
+
+    private Expr optimize(Expr expr) {
+        return expr.accept(this);
+    }
+
+    // null when the statement does nothing
+    private Stmt optimize(Stmt stmt) {
+        return stmt.accept(this);
+    }
+
+    private Stmt.Block optimizeBlock(Stmt.Block block) {
+        Scope scope = new Scope(block);
+        scopes.add(scope);
+        List<Stmt> statements = optimizeAll(block.statements, scope);
+        scopes.removeLast();
+        if (statements == block.statements) {
+            return block;
+        }
+        return block(statements, block, scope.slotCount);
+    }
+
+    private static Stmt.Block block(List<Stmt> statements, Stmt.Block original, int slotCount) {
+        Stmt.Block block = new Stmt.Block(statements);
+        block.slotCount = slotCount;
+        block.assignmentCounts = original.assignmentCounts;
+        block.capturedSlots = original.capturedSlots;
+        return block;
+    }
+
+    /*
+     * the statements themselves when none of them changed. Variables keep their slots when the statements after a
+     * jump are dropped, a frame defines its variables in order and none of those would have been defined anyway.
+     */
+    private List<Stmt> optimizeAll(List<Stmt> statements, Scope scope) {
+        List<Stmt> optimized = new ArrayList<>(statements.size());
+        boolean changed = false;
+        for (int i = 0; i < statements.size(); i++) {
+            Stmt statement = statements.get(i);
+            int count = optimized.size();
+            List<Stmt> after = List.of();
+            Stmt result;
+            if (scope != null && statement instanceof Stmt.While loop) {
+                after = new ArrayList<>();
+                result = optimizeLoop(loop, i > 0 ? statements.get(i - 1) : null, scope, optimized, after);
+            } else {
+                result = optimize(statement);
+            }
+            changed |= result != statement || optimized.size() != count || !after.isEmpty();
+            if (result != null) {
+                optimized.add(result);
+            }
+            optimized.addAll(after);
+            if (result instanceof Stmt.Return || result instanceof Stmt.Break || result instanceof Stmt.Continue) {
+                changed |= i < statements.size() - 1;
+                break;
+            }
+        }
+        return changed ? optimized : statements;
+    }
+
+    private List<Expr> optimizeExpressions(List<Expr> exprs) {
+        List<Expr> optimized = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expr expr : exprs) {
+            Expr result = optimize(expr);
+            changed |= result != expr;
+            optimized.add(result);
+        }
+        return changed ? optimized : exprs;
+    }
+
+    /*
+     * A loop runs in the frame of the scope it is declared in, the slots it adds there are only ever assigned, so
+     * they sit after the variables that frame defines.
+     *
+     * An integer induction variable is a local of the scope, declared right before the loop with an integer
+     * literal, whose only assignment anywhere is the loop's last statement adding an integer literal to it, which
+     * is how a 'for' loop is desugared. Every 'i * k' with a positive integer literal k in the loop then reads a
+     * slot that starts at the value of the product and takes the step times k right after i takes its step. The
+     * numbers involved are all integral, so the sum comes out exactly as the product would, as an int or as a
+     * double the same way.
+     *
+     * In the condition and anywhere in the body outside of nested functions, an expression that only applies
+     * operators to literals and to locals declared outside the loop and never assigned anywhere, or that calls
+     * 'length()' on such a local, becomes an Expr.Hoisted. It is computed where it always was the first time it is
+     * reached, and only read back from its slot after that, so an expression in a branch that never runs, or in
+     * the right operand of 'and' or 'or', is still never computed. Only numbers, booleans and the length of an
+     * array are kept: a string can hold the text of an array whose elements the loop changes, and an instance's
+     * length method runs on every pass. An expression that can't give a number or a boolean, like a concatenation
+     * with a string literal, is not hoisted at all, see canBeKept. Globals, fields, elements and the results of other calls can change
+     * while the loop runs, so an expression reading them stays in the loop.
+     */
+    private Stmt optimizeLoop(Stmt.While loop, Stmt previous, Scope scope, List<Stmt> preheader, List<Stmt> after) {
+        Induction induction = induction(loop, previous, scope);
+        if (induction != null) {
+            inductions.add(induction);
+        }
+        Stmt result = visitWhileStmt(loop);
+        if (induction != null) {
+            inductions.removeLast();
+        }
+        if (!(result instanceof Stmt.While optimized)) {
+            return result;
+        }
+
+        Stmt body = optimized.body;
+        if (induction != null && !induction.multiples.isEmpty()) {
+            Stmt.Block block = (Stmt.Block) body;
+            List<Stmt> statements = new ArrayList<>(block.statements);
+            for (Multiple multiple : induction.multiples) {
+                Object start = Operators.multiply(interpreter, loop.keyword, induction.start, multiple.factor);
+                Object step = Operators.multiply(interpreter, loop.keyword, induction.step, multiple.factor);
+                preheader.add(store(loop.keyword, 0, multiple.slot, new Expr.Literal(start)));
+                Expr.Binary next = new Expr.Binary(
+                        local(loop.keyword, 1, multiple.slot), induction.plus, new Expr.Literal(step));
+                statements.add(store(loop.keyword, 1, multiple.slot, next));
+            }
+            body = block(statements, block, block.slotCount);
+        }
+
+        Expr condition = hoist(optimized.condition, 0, scope, loop.keyword, preheader);
+        body = hoist(body, 0, scope, loop.keyword, preheader);
+        if (condition != optimized.condition || body != optimized.body) {
+            optimized = new Stmt.While(condition, body, loop.keyword);
+        }
+        return appendInLoop(optimized, scope, preheader, after);
+    }
+
+    /*
+     * A local declared outside the loop that the loop only uses in statements 's = s + a + b ...' is built in an
+     * Appender while the loop runs, so each pass appends to it instead of copying the whole string. The builder slot
+     * is cleared before the loop and the local is assigned what was built right after it. Nothing sees the local in
+     * between: the loop refers to it nowhere else, no function refers to it at all, and a return leaves the frame
+     * holding it behind.
+     */
+    private Stmt.While appendInLoop(Stmt.While loop, Scope scope, List<Stmt> preheader, List<Stmt> after) {
+        Map<Appended, Integer> appends = new HashMap<>();
+        findAppends(loop.body, 0, appends);
+        Stmt body = loop.body;
+        for (Map.Entry<Appended, Integer> append : appends.entrySet()) {
+            Appended local = append.getKey();
+            Stmt.Block declaring = scopes.get(local.level()).block;
+            int depth = scopes.size() - 1 - local.level();
+            if (local.slot() >= declaring.slotCount || declaring.capturedSlots.get(local.slot())
+                    || references(loop.condition, depth, local.slot()) + references(body, depth, local.slot())
+                    != 2 * append.getValue()) {
+                continue;
+            }
+            int builder = scope.slotCount++;
+            preheader.add(store(loop.keyword, 0, builder, new Expr.Literal(null)));
+            body = appendTo(body, local, builder, 0);
+            Expr.Append built = new Expr.Append(
+                    local(loop.keyword, depth, local.slot()), local(loop.keyword, 0, builder), List.of(), List.of());
+            after.add(store(loop.keyword, depth, local.slot(), built));
+        }
+        return body == loop.body ? loop : new Stmt.While(loop.condition, body, loop.keyword);
+    }
+
+    // counts the statements appending to each local, nesting is the number of blocks between the loop and stmt
+    private void findAppends(Stmt stmt, int nesting, Map<Appended, Integer> appends) {
+        switch (stmt) {
+            case Stmt.Block block -> {
+                for (Stmt statement : block.statements) {
+                    findAppends(statement, nesting + 1, appends);
+                }
+            }
+            case Stmt.If branch -> {
+                findAppends(branch.thenBranch, nesting, appends);
+                if (branch.elseBranch != null) {
+                    findAppends(branch.elseBranch, nesting, appends);
+                }
+            }
+            case Stmt.While loop -> findAppends(loop.body, nesting, appends);
+            case Stmt.Expression statement when appendedTo(statement) instanceof Expr.Variable target
+                    && target.depth >= nesting -> {
+                Appended local = new Appended(scopes.size() - 1 - (target.depth - nesting), target.slot);
+                appends.merge(local, 1, Integer::sum);
+            }
+            default -> {
+            }
+        }
+    }
+
+    private Stmt appendTo(Stmt stmt, Appended local, int builder, int nesting) {
+        switch (stmt) {
+            case Stmt.Block block -> {
+                List<Stmt> statements = new ArrayList<>(block.statements.size());
+                boolean changed = false;
+                for (Stmt statement : block.statements) {
+                    Stmt result = appendTo(statement, local, builder, nesting + 1);
+                    changed |= result != statement;
+                    statements.add(result);
+                }
+                return changed ? block(statements, block, block.slotCount) : block;
+            }
+            case Stmt.If branch -> {
+                Stmt thenBranch = appendTo(branch.thenBranch, local, builder, nesting);
+                Stmt elseBranch = branch.elseBranch == null ? null : appendTo(branch.elseBranch, local, builder, nesting);
+                return thenBranch == branch.thenBranch && elseBranch == branch.elseBranch
+                        ? branch : new Stmt.If(branch.condition, thenBranch, elseBranch, branch.keyword);
+            }
+            case Stmt.While loop -> {
+                Stmt body = appendTo(loop.body, local, builder, nesting);
+                return body == loop.body ? loop : new Stmt.While(loop.condition, body, loop.keyword);
+            }
+            case Stmt.Expression statement when appendedTo(statement) instanceof Expr.Variable target
+                    && scopes.size() - 1 - (target.depth - nesting) == local.level() && target.slot == local.slot() -> {
+                List<Token> operators = new ArrayList<>();
+                List<Expr> parts = new ArrayList<>();
+                Expr expr = ((Expr.Assign) statement.expression).value;
+                while (expr instanceof Expr.Binary binary && binary.operator.type == TokenType.PLUS) {
+                    operators.addFirst(binary.operator);
+                    parts.addFirst(binary.right);
+                    expr = binary.left;
+                }
+                return new Stmt.Expression(
+                        new Expr.Append(target, local(target.name, nesting, builder), operators, parts));
+            }
+            default -> {
+                return stmt;
+            }
+        }
+    }
+
+    /*
+     * the local 's' of a statement 's = s + a + b ...' adding a string literal, or null for any other statement. A
+     * number summed up in a loop is left to the arithmetic of the engines, which keep it unboxed.
+     */
+    private static Expr.Variable appendedTo(Stmt.Expression statement) {
+        if (!(statement.expression instanceof Expr.Assign assign) || assign.isGlobal()) {
+            return null;
+        }
+        Expr expr = assign.value;
+        boolean isText = false;
+        while (expr instanceof Expr.Binary binary && binary.operator.type == TokenType.PLUS) {
+            isText |= binary.right instanceof Expr.Literal literal && literal.value instanceof String;
+            expr = binary.left;
+        }
+        if (isText && expr instanceof Expr.Variable target && !target.isGlobal()
+                && target.depth == assign.depth && target.slot == assign.slot) {
+            return target;
+        }
+        return null;
+    }
+
+    /*
+     * the number of times stmt refers to the local at depth and slot, leaving out the functions declared in it
+     */
+    private static int references(Stmt stmt, int depth, int slot) {
+        return switch (stmt) {
+            case null -> 0;
+            case Stmt.Expression statement -> references(statement.expression, depth, slot);
+            case Stmt.Var var -> references(var.initializer, depth, slot);
+            case Stmt.Class declaration -> references(declaration.superClass, depth, slot);
+            case Stmt.Block block -> {
+                int count = 0;
+                for (Stmt statement : block.statements) {
+                    count += references(statement, depth + 1, slot);
+                }
+                yield count;
+            }
+            case Stmt.If branch -> references(branch.condition, depth, slot)
+                    + references(branch.thenBranch, depth, slot) + references(branch.elseBranch, depth, slot);
+            case Stmt.While loop -> references(loop.condition, depth, slot) + references(loop.body, depth, slot);
+            case Stmt.Return ret -> references(ret.expression, depth, slot);
+            default -> 0;
+        };
+    }
+
+    private static int references(Expr expr, int depth, int slot) {
+        return switch (expr) {
+            case null -> 0;
+            case Expr.Variable variable -> refersTo(variable, depth, slot);
+            case Expr.Assign assign -> refersTo(assign, depth, slot) + references(assign.value, depth, slot);
+            case Expr.Binary binary -> references(binary.left, depth, slot) + references(binary.right, depth, slot);
+            case Expr.Logical logical -> references(logical.left, depth, slot) + references(logical.right, depth, slot);
+            case Expr.Grouping grouping -> references(grouping.expression, depth, slot);
+            case Expr.Unary unary -> references(unary.right, depth, slot);
+            case Expr.IndexAssign assign -> references(assign.indexee, depth, slot)
+                    + references(assign.index, depth, slot) + references(assign.value, depth, slot);
+            case Expr.Call call -> references(call.callee, depth, slot) + references(call.arguments, depth, slot);
+            case Expr.Indexing indexing -> references(indexing.indexee, depth, slot)
+                    + references(indexing.index, depth, slot);
+            case Expr.Get get -> references(get.object, depth, slot);
+            case Expr.Set set -> references(set.object, depth, slot) + references(set.value, depth, slot);
+            case Expr.Array array -> references(array.elements, depth, slot);
+            case Expr.Map map -> references(map.keys, depth, slot) + references(map.values, depth, slot);
+            case Expr.Inline inline -> references(inline.call, depth, slot) + references(inline.body, depth, slot);
+            case Expr.Append append -> refersTo(append.target, depth, slot) + refersTo(append.builder, depth, slot)
+                    + references(append.parts, depth, slot);
+            case Expr.Hoisted hoisted -> refersTo(hoisted.hoisted, depth, slot) + references(hoisted.value, depth, slot);
+            case Expr.Super call -> call.arguments == null ? 0 : references(call.arguments, depth, slot);
+            default -> 0;
+        };
+    }
+
+    private static int references(List<Expr> exprs, int depth, int slot) {
+        int count = 0;
+        for (Expr expr : exprs) {
+            count += references(expr, depth, slot);
+        }
+        return count;
+    }
+
+    private static int refersTo(Expr.Reference reference, int depth, int slot) {
+        return !reference.isGlobal() && reference.depth == depth && reference.slot == slot ? 1 : 0;
+    }
+
+    private Induction induction(Stmt.While loop, Stmt previous, Scope scope) {
+        if (!(previous instanceof Stmt.Var declaration)
+                || !(declaration.initializer instanceof Expr.Literal start && start.value instanceof Integer)
+                || !(loop.body instanceof Stmt.Block body)
+                || body.statements.isEmpty()
+                || !(body.statements.getLast() instanceof Stmt.Expression last)
+                || !(last.expression instanceof Expr.Assign assign)
+                || assign.isGlobal() || assign.depth != 1
+                || !assign.name.lexeme.equals(declaration.name.lexeme)
+                || scope.assignments(assign.slot) != 1
+                || !(assign.value instanceof Expr.Binary next)
+                || next.operator.type != TokenType.PLUS
+                || !(next.left instanceof Expr.Variable variable)
+                || variable.isGlobal() || variable.depth != 1 || variable.slot != assign.slot
+                || !(optimize(next.right) instanceof Expr.Literal step && step.value instanceof Integer)) {
+            return null;
+        }
+        return new Induction(scope, scopes.size() - 1, assign.slot, start.value, step.value, next.operator);
+    }
+
+    /*
+     * the slot holding the multiple of an induction variable that 'left * right' computes, or null when it is not one
+     */
+    private Expr.Variable multiple(Token operator, Expr left, Expr right) {
+        if (inductions.isEmpty() || operator.type != TokenType.STAR) {
+            return null;
+        }
+        Expr.Variable variable = left instanceof Expr.Variable l ? l : right instanceof Expr.Variable r ? r : null;
+        Expr factor = variable == left ? right : left;
+        if (variable == null || variable.isGlobal()
+                || !(factor instanceof Expr.Literal literal && literal.value instanceof Integer k && k > 0)) {
+            return null;
+        }
+        int scope = scopes.size() - 1 - variable.depth;
+        for (Induction induction : inductions) {
+            if (induction.level == scope && induction.slot == variable.slot) {
+                int slot = induction.slotOf(k);
+                return local(variable.name, variable.depth, slot);
+            }
+        }
+        return null;
+    }
+
+    /*
+     * A global function declared once at the top level is inlined when its body only returns an expression of a
+     * few nodes that neither calls the function itself, nor creates a closure, nor assigns its parameters. Its
+     * calls are optimized before anything else, so inlining doesn't depend on the order of the declarations.
+     */
+    private void findInlinableFunctions(List<Stmt> statements) {
+        Map<String, Integer> declarations = new HashMap<>();
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function function) {
+                declarations.merge(function.name.lexeme, 1, Integer::sum);
+            }
+        }
+        Map<Environment.Cell, Stmt.Function> found = new HashMap<>();
+        for (Stmt statement : statements) {
+            if (statement instanceof Stmt.Function function && declarations.get(function.name.lexeme) == 1) {
+                Stmt.Function optimized = (Stmt.Function) visitFunctionStmt(function);
+                Environment.Cell cell = interpreter.globals.cell(function.name.lexeme);
+                if (returnedExpression(optimized) instanceof Expr returned
+                        && size(returned, cell) <= INLINE_SIZE
+                        && ((Stmt.Block) optimized.body).assignmentCounts.length == 0) {
+                    found.put(cell, optimized);
+                    optimizedFunctions.put(function, optimized);
+                }
+            }
+        }
+        inlinable.putAll(found);
+    }
+
+    private static Expr returnedExpression(Stmt.Function function) {
+        List<Stmt> statements = ((Stmt.Block) function.body).statements;
+        if (statements.size() == 1 && statements.getFirst() instanceof Stmt.Return ret) {
+            return ret.expression;
+        }
+        return null;
+    }
+
+    /*
+     * number of nodes of an expression that can be inlined into a call of the function in cell, MAX_VALUE for any
+     * other expression
+     */
+    private static int size(Expr expr, Environment.Cell cell) {
+        return switch (expr) {
+            case Expr.Literal literal -> 1;
+            case Expr.Variable variable -> 1;
+            case Expr.Grouping grouping -> size(grouping.expression, cell);
+            case Expr.Unary unary -> add(1, size(unary.right, cell));
+            case Expr.Binary binary -> add(1, add(size(binary.left, cell), size(binary.right, cell)));
+            case Expr.Logical logical -> add(1, add(size(logical.left, cell), size(logical.right, cell)));
+            case Expr.Indexing indexing -> add(1, add(size(indexing.indexee, cell), size(indexing.index, cell)));
+            case Expr.Get get -> add(1, size(get.object, cell));
+            case Expr.Call call when !(call.callee instanceof Expr.Variable variable && variable.cell == cell) -> {
+                int size = add(1, size(call.callee, cell));
+                for (Expr argument : call.arguments) {
+                    size = add(size, size(argument, cell));
+                }
+                yield size;
+            }
+            default -> Integer.MAX_VALUE;
+        };
+    }
+
+    private static int add(int a, int b) {
+        return a == Integer.MAX_VALUE || b == Integer.MAX_VALUE ? Integer.MAX_VALUE : a + b;
+    }
+
+    /*
+     * The arguments get slots of their own in the innermost scope, the copy of the body reads them there. The
+     * copy is optimized in place of the call, so a call of another inlinable function in it is inlined too,
+     * unless that function is already being inlined here.
+     */
+    private Expr inline(Expr.Call call, Stmt.Function function) {
+        int slot = 0;
+        if (!function.parameters.isEmpty()) {
+            Scope scope = scopes.getLast();
+            slot = scope.slotCount;
+            scope.slotCount += function.parameters.size();
+        }
+        int enclosingSlot = argumentSlot;
+        argumentSlot = slot;
+        inlining.add(function);
+        Expr body = optimize(returnedExpression(function));
+        inlining.remove(function);
+        argumentSlot = enclosingSlot;
+        return new Expr.Inline(call, function, slot, body);
+    }
+
+    /*
+     * true when expr gives the same value on every pass of the loop: it only reads locals declared outside the loop
+     * that are never assigned anywhere, nesting being the number of blocks between the loop and expr, and only
+     * applies operators to them or calls 'length()' on one of them
+     */
+    private boolean isInvariant(Expr expr, int nesting) {
+        return switch (expr) {
+            case Expr.Literal literal -> true;
+            case Expr.Variable variable -> !variable.isGlobal() && variable.depth >= nesting
+                    && scopes.get(scopes.size() - 1 - (variable.depth - nesting)).isNeverAssigned(variable.slot);
+            case Expr.Grouping grouping -> isInvariant(grouping.expression, nesting);
+            case Expr.Unary unary -> isInvariant(unary.right, nesting);
+            case Expr.Binary binary -> isInvariant(binary.left, nesting) && isInvariant(binary.right, nesting);
+            case Expr.Logical logical -> isInvariant(logical.left, nesting) && isInvariant(logical.right, nesting);
+            default -> lengthOf(expr, nesting) != null;
+        };
+    }
+
+    /*
+     * the number of operators in expr, a call counting as two. A single operator on locals and literals is left in
+     * the loop, it costs no more than reading its value back from a slot.
+     */
+    private static int cost(Expr expr) {
+        return switch (expr) {
+            case Expr.Grouping grouping -> cost(grouping.expression);
+            case Expr.Unary unary -> 1 + cost(unary.right);
+            case Expr.Binary binary -> 1 + cost(binary.left) + cost(binary.right);
+            case Expr.Logical logical -> 1 + cost(logical.left) + cost(logical.right);
+            case Expr.Call call -> 2;
+            default -> 0;
+        };
+    }
+
+    /*
+     * whether expr can give a number or a boolean, the only values Expr.Hoisted.keeps. A local or the length of one
+     * may hold anything until the loop runs, but an expression built on a string, an array or nil can only give a
+     * string, an array or an error, so hoisting it would compute it on every pass anyway.
+     */
+    private static boolean canBeKept(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value instanceof Integer || literal.value instanceof Double
+                    || literal.value instanceof Boolean;
+            case Expr.Grouping grouping -> canBeKept(grouping.expression);
+            case Expr.Binary binary -> switch (binary.operator.type) {
+                case PLUS -> canBeKept(binary.left) && canBeKept(binary.right);
+                case STAR -> canBeKept(binary.left);
+                default -> true;
+            };
+            case Expr.Logical logical -> canBeKept(logical.left) && canBeKept(logical.right);
+            default -> true;
+        };
+    }
+
+    // the receiver of a call 'receiver.length()' on an invariant local, null for any other expression
+    private Expr.Variable lengthOf(Expr expr, int nesting) {
+        if (expr instanceof Expr.Call call && call.arguments.isEmpty()
+                && call.callee instanceof Expr.Get get && get.property.lexeme.equals("length")
+                && get.object instanceof Expr.Variable receiver && isInvariant(receiver, nesting)) {
+            return receiver;
+        }
+        return null;
+    }
+
+    private Stmt hoist(Stmt stmt, int nesting, Scope scope, Token keyword, List<Stmt> preheader) {
+        switch (stmt) {
+            case Stmt.Expression statement -> {
+                Expr expression = hoist(statement.expression, nesting, scope, keyword, preheader);
+                return expression == statement.expression ? statement : new Stmt.Expression(expression);
+            }
+            case Stmt.Var var when var.initializer != null -> {
+                Expr initializer = hoist(var.initializer, nesting, scope, keyword, preheader);
+                return initializer == var.initializer ? var : new Stmt.Var(var.name, initializer);
+            }
+            case Stmt.Return ret when ret.expression != null -> {
+                Expr expression = hoist(ret.expression, nesting, scope, keyword, preheader);
+                if (expression == ret.expression) {
+                    return ret;
+                }
+                Stmt.Return hoisted = new Stmt.Return(ret.keyword, expression);
+                hoisted.isTailCall = ret.isTailCall && expression instanceof Expr.Call;
+                return hoisted;
+            }
+            case Stmt.Block block -> {
+                List<Stmt> statements = new ArrayList<>(block.statements.size());
+                boolean changed = false;
+                for (Stmt statement : block.statements) {
+                    Stmt result = hoist(statement, nesting + 1, scope, keyword, preheader);
+                    changed |= result != statement;
+                    statements.add(result);
+                }
+                return changed ? block(statements, block, block.slotCount) : block;
+            }
+            case Stmt.If branch -> {
+                Expr condition = hoist(branch.condition, nesting, scope, keyword, preheader);
+                Stmt thenBranch = hoist(branch.thenBranch, nesting, scope, keyword, preheader);
+                Stmt elseBranch = branch.elseBranch == null
+                        ? null : hoist(branch.elseBranch, nesting, scope, keyword, preheader);
+                return condition == branch.condition && thenBranch == branch.thenBranch
+                        && elseBranch == branch.elseBranch
+                        ? branch : new Stmt.If(condition, thenBranch, elseBranch, branch.keyword);
+            }
+            case Stmt.While loop -> {
+                Expr condition = hoist(loop.condition, nesting, scope, keyword, preheader);
+                Stmt body = hoist(loop.body, nesting, scope, keyword, preheader);
+                return condition == loop.condition && body == loop.body
+                        ? loop : new Stmt.While(condition, body, loop.keyword);
+            }
+            default -> {
+                return stmt;
+            }
+        }
+    }
+
+    /*
+     * expr with its largest invariant parts that compute something kept in slots of the loop's scope. Functions
+     * declared in the loop are left alone, they run in frames of their own.
+     */
+    private Expr hoist(Expr expr, int nesting, Scope scope, Token keyword, List<Stmt> preheader) {
+        if (cost(expr) >= 2 && isInvariant(expr, nesting) && canBeKept(expr)) {
+            int slot = scope.slotCount++;
+            preheader.add(store(keyword, 0, slot, new Expr.Literal(null)));
+            return new Expr.Hoisted(expr, local(keyword, nesting, slot), lengthOf(expr, nesting));
+        }
+        return switch (expr) {
+            case Expr.Binary binary -> {
+                Expr left = hoist(binary.left, nesting, scope, keyword, preheader);
+                Expr right = hoist(binary.right, nesting, scope, keyword, preheader);
+                yield left == binary.left && right == binary.right
+                        ? binary : new Expr.Binary(left, binary.operator, right);
+            }
+            case Expr.Logical logical -> {
+                Expr left = hoist(logical.left, nesting, scope, keyword, preheader);
+                Expr right = hoist(logical.right, nesting, scope, keyword, preheader);
+                yield left == logical.left && right == logical.right
+                        ? logical : new Expr.Logical(left, logical.operator, right);
+            }
+            case Expr.Unary unary -> {
+                Expr right = hoist(unary.right, nesting, scope, keyword, preheader);
+                yield right == unary.right ? unary : new Expr.Unary(unary.operator, right);
+            }
+            case Expr.Grouping grouping -> {
+                Expr inner = hoist(grouping.expression, nesting, scope, keyword, preheader);
+                yield inner == grouping.expression ? grouping : new Expr.Grouping(inner);
+            }
+            case Expr.Assign assign -> {
+                Expr value = hoist(assign.value, nesting, scope, keyword, preheader);
+                if (value == assign.value) {
+                    yield assign;
+                }
+                Expr.Assign hoisted = new Expr.Assign(assign.name, value);
+                hoisted.cell = assign.cell;
+                hoisted.depth = assign.depth;
+                hoisted.slot = assign.slot;
+                yield hoisted;
+            }
+            case Expr.IndexAssign assign -> {
+                Expr indexee = hoist(assign.indexee, nesting, scope, keyword, preheader);
+                Expr index = hoist(assign.index, nesting, scope, keyword, preheader);
+                Expr value = hoist(assign.value, nesting, scope, keyword, preheader);
+                yield indexee == assign.indexee && index == assign.index && value == assign.value
+                        ? assign : new Expr.IndexAssign(assign.squareBrace, indexee, index, value);
+            }
+            case Expr.Call call -> {
+                Expr callee = hoist(call.callee, nesting, scope, keyword, preheader);
+                List<Expr> arguments = hoist(call.arguments, nesting, scope, keyword, preheader);
+                yield callee == call.callee && arguments == call.arguments
+                        ? call : new Expr.Call(callee, call.paren, arguments);
+            }
+            case Expr.Indexing indexing -> {
+                Expr indexee = hoist(indexing.indexee, nesting, scope, keyword, preheader);
+                Expr index = hoist(indexing.index, nesting, scope, keyword, preheader);
+                yield indexee == indexing.indexee && index == indexing.index
+                        ? indexing : new Expr.Indexing(indexee, indexing.squareBrace, index);
+            }
+            case Expr.Get get -> {
+                Expr object = hoist(get.object, nesting, scope, keyword, preheader);
+                if (object == get.object) {
+                    yield get;
+                }
+                Expr.Get hoisted = new Expr.Get(object, get.property);
+                hoisted.cache.access = get.cache.access;
+                yield hoisted;
+            }
+            case Expr.Set set -> {
+                Expr object = hoist(set.object, nesting, scope, keyword, preheader);
+                Expr value = hoist(set.value, nesting, scope, keyword, preheader);
+                if (object == set.object && value == set.value) {
+                    yield set;
+                }
+                Expr.Set hoisted = new Expr.Set(object, set.property, value);
+                hoisted.cache.access = set.cache.access;
+                yield hoisted;
+            }
+            case Expr.Array array -> {
+                List<Expr> elements = hoist(array.elements, nesting, scope, keyword, preheader);
+                yield elements == array.elements ? array : new Expr.Array(array.squareBrace, elements);
+            }
+            case Expr.Map map -> {
+                List<Expr> keys = hoist(map.keys, nesting, scope, keyword, preheader);
+                List<Expr> values = hoist(map.values, nesting, scope, keyword, preheader);
+                yield keys == map.keys && values == map.values ? map : new Expr.Map(map.brace, keys, values);
+            }
+            default -> expr;
+        };
+    }
+
+    private List<Expr> hoist(List<Expr> exprs, int nesting, Scope scope, Token keyword, List<Stmt> preheader) {
+        List<Expr> hoisted = new ArrayList<>(exprs.size());
+        boolean changed = false;
+        for (Expr expr : exprs) {
+            Expr result = hoist(expr, nesting, scope, keyword, preheader);
+            changed |= result != expr;
+            hoisted.add(result);
+        }
+        return changed ? hoisted : exprs;
+    }
+
+    private static Expr.Variable local(Token token, int depth, int slot) {
+        Expr.Variable variable = new Expr.Variable(token);
+        variable.depth = depth;
+        variable.slot = slot;
+        return variable;
+    }
+
+    private static Stmt store(Token token, int depth, int slot, Expr value) {
+        Expr.Assign assign = new Expr.Assign(token, value);
+        assign.depth = depth;
+        assign.slot = slot;
+        return new Stmt.Expression(assign);
+    }
+
+    /*
+     * a local scope being optimized, slotCount grows with the slots its loops add to it
+     */
+    private static class Scope {
+        final Stmt.Block block;
+        int slotCount;
+
+        Scope(Stmt.Block block) {
+            this.block = block;
+            this.slotCount = block.slotCount;
+        }
+
+        int assignments(int slot) {
+            return slot < block.assignmentCounts.length ? block.assignmentCounts[slot] : 0;
+        }
+
+        // the slots added by the optimizer are assigned, but not counted
+        boolean isNeverAssigned(int slot) {
+            return slot < block.slotCount && assignments(slot) == 0;
+        }
+    }
+
+    private record Multiple(int factor, int slot) { }
+
+    // a local built by appending to it in a loop, level is the index of its scope in scopes
+    private record Appended(int level, int slot) { }
+
+    private static class Induction {
+        final Scope scope;
+        // index of the scope in scopes
+        final int level;
+        final int slot;
+        final Object start;
+        final Object step;
+        final Token plus;
+        final List<Multiple> multiples = new ArrayList<>();
+
+        Induction(Scope scope, int level, int slot, Object start, Object step, Token plus) {
+            this.scope = scope;
+            this.level = level;
+            this.slot = slot;
+            this.start = start;
+            this.step = step;
+            this.plus = plus;
+        }
+
+        int slotOf(int factor) {
+            for (Multiple multiple : multiples) {
+                if (multiple.factor == factor) {
+                    return multiple.slot;
+                }
+            }
+            Multiple multiple = new Multiple(factor, scope.slotCount++);
+            multiples.add(multiple);
+            return multiple.slot;
+        }
+    }
+}
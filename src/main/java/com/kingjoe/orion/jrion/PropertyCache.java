@@ -0,0 +1,110 @@
+package com.kingjoe.orion.jrion;
+
+/*
+ * Inline cache of a property access site, an Expr.Get or an Expr.Set. It remembers how the property resolved on each
+ * receiver class seen at the site, so accessing it again on one of those classes goes straight to the field or the
+ * method instead of through the lookups of RionInstance.get and set. A site that sees more than MAX_CLASSES classes
+ * is megamorphic and keeps using those lookups.
+ */
+final class PropertyCache {
+    private static final int MAX_CLASSES = 4;
+
+    /*
+     * Where the site is, which decides whether it may access private properties. Outside of any class it never may,
+     * 'this.name' in a method always may as far as fields go, and anywhere else in a class the instance has to be
+     * the receiver of the enclosing method. A private method can only be accessed from within its own class.
+     */
+    enum Access {
+        OUTSIDE_CLASS, RECEIVER, IN_CLASS
+    }
+
+    final Token name;
+    // set by the Resolver, a site that was not resolved checks against the receiver like any site in a class
+    Access access = Access.IN_CLASS;
+    private final RionClass[] classes = new RionClass[MAX_CLASSES];
+    private final RionClass.Property[] properties = new RionClass.Property[MAX_CLASSES];
+    private int size = 0;
+    private boolean isMegamorphic = false;
+
+    PropertyCache(Token name) {
+        this.name = name;
+    }
+
+    Object get(
+            Environment environment,
+            RionInstance instance
+    ) {
+        RionClass.Property property = lookup(instance.getRionClass());
+        checkAccess(environment, instance, property);
+        return instance.get(environment, name, property);
+    }
+
+    /*
+     * the property when it is a method the accessing code may call, so a call site can invoke it with the instance
+     * as receiver instead of binding it first, and null when it is not a method.
+     */
+    RionClass.Property method(
+            Environment environment,
+            RionInstance instance
+    ) {
+        RionClass.Property property = lookup(instance.getRionClass());
+        if (property.kind() == RionClass.PropertyKind.PRIVATE_METHOD) {
+            checkAccess(environment, instance, property);
+            return property;
+        }
+        return property.kind() == RionClass.PropertyKind.METHOD ? property : null;
+    }
+
+    Object set(
+            Environment environment,
+            RionInstance instance,
+            Object value
+    ) {
+        RionClass.Property property = lookup(instance.getRionClass());
+        checkAccess(environment, instance, property);
+        return instance.set(environment, name, property, value);
+    }
+
+    private void checkAccess(
+            Environment environment,
+            RionInstance instance,
+            RionClass.Property property
+    ) {
+        switch (property.kind()) {
+            case PRIVATE_FIELD -> {
+                if (access == Access.OUTSIDE_CLASS || access == Access.IN_CLASS && environment.receiver() != instance) {
+                    throw instance.privateFieldError(name);
+                }
+            }
+            case PRIVATE_METHOD -> {
+                Object receiver = access == Access.RECEIVER ? instance : environment.receiver();
+                if (access == Access.OUTSIDE_CLASS
+                        || !(receiver instanceof RionInstance receiverInstance)
+                        || receiverInstance.getRionClass() != property.owner()) {
+                    throw property.owner().privateMethodError(name);
+                }
+            }
+            default -> {
+            }
+        }
+    }
+
+    private RionClass.Property lookup(RionClass rionClass) {
+        for (int i = 0; i < size; i++) {
+            if (classes[i] == rionClass) {
+                return properties[i];
+            }
+        }
+        if (isMegamorphic) {
+            return RionClass.Property.UNCACHED;
+        }
+        if (size == MAX_CLASSES) {
+            isMegamorphic = true;
+            return RionClass.Property.UNCACHED;
+        }
+        RionClass.Property property = rionClass.resolveProperty(name.lexeme);
+        classes[size] = rionClass;
+        properties[size++] = property;
+        return property;
+    }
+}
@@ -4,7 +4,7 @@ import java.util.*;
 
 public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     private final Interpreter interpreter;
-    private final Stack<Map<String, VariableInfo>> scopes = new Stack<>();
+    private final Stack<Scope> scopes = new Stack<>();
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
 
@@ -24,7 +24,29 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         DECLARED, DEFINED, USED
     }
 
-    private record VariableInfo(VariableState state, Token token, int index) { }
+    private record VariableInfo(VariableState state, Token token, int index, boolean isParameter) { }
+
+    /*
+     * variables of a scope by name, slotCount is the size of the environment the scope becomes at runtime. It is
+     * counted separately because a local declared in a function body can take the name of a parameter, both then
+     * have their own slot in the function's frame.
+     */
+    private static class Scope extends HashMap<String, VariableInfo> {
+        private static final long serialVersionUID = 1L;
+
+        int slotCount = 0;
+        int[] assignmentCounts = new int[0];
+        final BitSet captured = new BitSet();
+        // the frame of a function call rather than a block
+        boolean isFunction = false;
+
+        void assigned(int slot) {
+            if (slot >= assignmentCounts.length) {
+                assignmentCounts = Arrays.copyOf(assignmentCounts, slotCount);
+            }
+            assignmentCounts[slot]++;
+        }
+    }
 
     @Override
     public Object visitBinaryExpression(Expr.Binary expr) {
@@ -114,6 +136,7 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     @Override
     public Object visitGetExpression(Expr.Get expr) {
         resolve(expr.object);
+        expr.cache.access = propertyAccess(expr.object);
         return null;
     }
 
@@ -142,6 +165,21 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         return null;
     }
 
+    @Override
+    public Object visitInlineExpression(Expr.Inline expr) {
+        throw new IllegalStateException("Calls are only inlined after resolving");
+    }
+
+    @Override
+    public Object visitAppendExpression(Expr.Append expr) {
+        throw new IllegalStateException("Appends are only built after resolving");
+    }
+
+    @Override
+    public Object visitHoistedExpression(Expr.Hoisted expr) {
+        throw new IllegalStateException("Hoisted expressions are only built after resolving");
+    }
+
     @Override
     public Object visitSuperExpression(Expr.Super expr) {
         if (currentClass == ClassType.NONE) {
@@ -161,6 +199,7 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     public Object visitSetExpression(Expr.Set expr) {
         resolve(expr.object);
         resolve(expr.value);
+        expr.cache.access = propertyAccess(expr.object);
         return null;
     }
 
@@ -188,11 +227,7 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         declare(stmt.name);
         define(stmt.name);
 
-
-
-        beginScope();
-        defineKeywordInScope(stmt.name, "this");
-
+        // the superclass is evaluated where the class is declared, not in the frame of a method
         if (stmt.superClass != null) {
             if (stmt.name.lexeme.equals(stmt.superClass.name.lexeme)) {
                 Rion.error(stmt.superClass.name, "A class can't inherit from itself");
@@ -210,8 +245,6 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             declaration = FunctionType.METHOD;
         }
 
-        endScope();
-
         currentClass = enclosingClass;
         return null;
     }
@@ -229,6 +262,9 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         beginScope();
         resolve(stmt.statements);
         checkUnusedVariables(scopes.peek());
+        stmt.slotCount = scopes.peek().slotCount;
+        stmt.assignmentCounts = scopes.peek().assignmentCounts;
+        stmt.capturedSlots = scopes.peek().captured;
         endScope();
         return null;
     }
@@ -261,6 +297,7 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         if (stmt.expression != null) {
             resolve(stmt.expression);
         }
+        stmt.isTailCall = stmt.expression instanceof Expr.Call;
         return null;
     }
 
@@ -289,7 +326,7 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
     }
 
     private void beginScope() {
-        scopes.push(new HashMap<>());
+        scopes.push(new Scope());
     }
 
     private void endScope() {
@@ -302,12 +339,15 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             return;
         }
 
-        Map<String, VariableInfo> scope = scopes.peek();
-        if (scope.containsKey(name.lexeme)) {
+        Scope scope = scopes.peek();
+        VariableInfo existing = scope.get(name.lexeme);
+        if (existing != null && existing.isParameter) {
+            // the parameter can no longer be referenced once the body declares a local of the same name
+            checkUnusedVariable(name.lexeme, existing);
+        } else if (existing != null) {
             Rion.error(name, "Variable with this name '" + name.lexeme + "' is already defined in this scope.");
         }
-        int index = scope.size();
-        scope.put(name.lexeme, new VariableInfo(VariableState.DECLARED, name, index));
+        scope.put(name.lexeme, new VariableInfo(VariableState.DECLARED, name, scope.slotCount++, false));
     }
 
 
@@ -315,37 +355,52 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
         if (scopes.isEmpty()) {
             return;
         }
-        Map<String, VariableInfo> scope = scopes.peek();
-        int index = scope.get(name.lexeme).index;
-        scope.put(name.lexeme, new VariableInfo(VariableState.DEFINED, name, index));
+        Scope scope = scopes.peek();
+        VariableInfo info = scope.get(name.lexeme);
+        scope.put(name.lexeme, new VariableInfo(VariableState.DEFINED, name, info.index, info.isParameter));
     }
 
-    private void defineKeywordInScope(Token classToken, String name) {
-        if (scopes.isEmpty()) {
-            return;
+    private void defineParameter(Token name) {
+        Scope scope = scopes.peek();
+        if (scope.containsKey(name.lexeme)) {
+            Rion.error(name, "Variable with this name '" + name.lexeme + "' is already defined in this scope.");
         }
-        Token keyword = new Token(TokenType.THIS, name, name, classToken.line);
-        Map<String, VariableInfo> scope = scopes.peek();
-        int index = scope.size();
+        scope.put(name.lexeme, new VariableInfo(VariableState.DEFINED, name, scope.slotCount++, true));
+    }
+
+    private void defineKeywordInScope(Token methodToken, String name) {
+        Token keyword = new Token(TokenType.THIS, name, name, methodToken.line);
+        Scope scope = scopes.peek();
         // since we are defining "this" as a local variable, to prevent a "variable not used" runtime error
         // we mark it as used by default in-case it never gets used in a method
-        scope.put(keyword.lexeme, new VariableInfo(VariableState.USED, keyword, index));
+        scope.put(keyword.lexeme, new VariableInfo(VariableState.USED, keyword, scope.slotCount++, false));
     }
 
     private void resolveLocal(
-            Expr expr,
+            Expr.Reference expr,
             Token name
     ) {
         for (int i = scopes.size() - 1; i >= 0; i--) {
             if (scopes.get(i).containsKey(name.lexeme)) {
                 //current innermost scope = 0, enclosing scope = 1, and so on... walking upwards
                 int index = scopes.get(i).get(name.lexeme).index;
-                interpreter.resolve(expr, scopes.size() - 1 - i, index);
+                expr.depth = scopes.size() - 1 - i;
+                expr.slot = index;
                 markVariableAsUsed(name, i, index);
+                if (expr instanceof Expr.Assign) {
+                    scopes.get(i).assigned(index);
+                }
+                for (int j = i + 1; j < scopes.size(); j++) {
+                    if (scopes.get(j).isFunction) {
+                        scopes.get(i).captured.set(index);
+                        break;
+                    }
+                }
                 return;
             }
-            //if the variable is not found in all the local scopes, we leave it unresolved and assume it is global
         }
+        //if the variable is not found in all the local scopes, we assume it is global
+        expr.cell = interpreter.globals.cell(name.lexeme);
     }
 
     private void markVariableAsUsed(
@@ -353,45 +408,72 @@ public class Resolver implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
             int scopeIndex,
             int index
     ) {
-        scopes.get(scopeIndex).put(name.lexeme, new VariableInfo(VariableState.USED, name, index));
+        VariableInfo info = scopes.get(scopeIndex).get(name.lexeme);
+        scopes.get(scopeIndex).put(name.lexeme, new VariableInfo(VariableState.USED, name, index, info.isParameter));
     }
 
     private void resolveFunction(
             Stmt.Function function,
             FunctionType functionType
     ) {
-        resolveFunction(functionType, function.parameters, function.body);
+        resolveFunction(functionType, function.name, function.parameters, function.body);
     }
 
     private void resolveAnonFunction(
             Expr.AnonFunc function
     ) {
-        resolveFunction(FunctionType.FUNCTION, function.parameters, function.body);
+        resolveFunction(FunctionType.FUNCTION, function.paren, function.parameters, function.body);
     }
 
+    /*
+     * A call runs in a single frame: 'this' and 'super' for a method, then the parameters, then the locals declared
+     * directly in the body. The body block does not get a scope of its own, its slot count is the size of the frame.
+     */
     private void resolveFunction(
             FunctionType type,
+            Token name,
             List<Token> parameters,
             Stmt body
     ) {
         FunctionType enclosingFunction = currentFunction;
         currentFunction = type;
         beginScope();
+        scopes.peek().isFunction = true;
+        if (type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            defineKeywordInScope(name, "this");
+            defineKeywordInScope(name, "super");
+        }
         for (Token param : parameters) {
-            declare(param);
-            define(param);
+            defineParameter(param);
         }
-        resolve(body);
+        Stmt.Block block = (Stmt.Block) body;
+        resolve(block.statements);
         checkUnusedVariables(scopes.peek());
+        block.slotCount = scopes.peek().slotCount;
+        block.assignmentCounts = scopes.peek().assignmentCounts;
+        block.capturedSlots = scopes.peek().captured;
         endScope();
         currentFunction = enclosingFunction;
     }
 
+    /*
+     * private properties are only accessible from within a class, and at runtime the receiver of the enclosing
+     * method is what 'this' refers to here, so 'this.name' needs no check against it.
+     */
+    private PropertyCache.Access propertyAccess(Expr object) {
+        if (currentClass == ClassType.NONE) {
+            return PropertyCache.Access.OUTSIDE_CLASS;
+        }
+        return object instanceof Expr.This ? PropertyCache.Access.RECEIVER : PropertyCache.Access.IN_CLASS;
+    }
+
     private void checkUnusedVariables(Map<String, VariableInfo> scope) {
-        scope.forEach((name, info) -> {
-            if (info.state != VariableState.USED) {
-                Rion.error(info.token, "Unused local variable '" + name + "'.");
-            }
-        });
+        scope.forEach(this::checkUnusedVariable);
+    }
+
+    private void checkUnusedVariable(String name, VariableInfo info) {
+        if (info.state != VariableState.USED) {
+            Rion.error(info.token, "Unused local variable '" + name + "'.");
+        }
     }
 }
@@ -8,6 +8,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
 
 public class Rion {
@@ -15,38 +16,102 @@ public class Rion {
     private static boolean hadError = false;
     private static boolean hadRuntimeError = false;
     private static final Interpreter interpreter = new Interpreter();
+    private static Engine engine = Engine.TREE;
+    private static boolean optimize = true;
+    private static boolean dumpTypes = false;
+    private static boolean nodeHistogram = false;
+
+    private enum Engine {
+        TREE, TIERED, JVM, NODE
+    }
 
     public static void main(String[] args) throws IOException {
-        if (args.length > 1) {
-            System.out.println("Usage: jrion [path to script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            if (args[0].equals("--version")) {
+        int status = execute(args);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
+
+    /*
+     * runs jrion the way main does, but returns the status main exits with instead of ending the process: 64 for a
+     * usage error, 65 for a compile error and 70 for a runtime error
+     */
+    static int execute(String[] args) throws IOException {
+        hadError = false;
+        hadRuntimeError = false;
+        engine = null;
+        optimize = true;
+        dumpTypes = false;
+        nodeHistogram = false;
+        List<String> paths = new ArrayList<>();
+        for (String arg : args) {
+            if (arg.equals("--version")) {
                 System.out.println("jrion version 0.1.0");
-                System.exit(0);
+                return 0;
+            } else if (arg.equals("--engine=tree")) {
+                engine = Engine.TREE;
+            } else if (arg.equals("--engine=tiered")) {
+                engine = Engine.TIERED;
+            } else if (arg.equals("--engine=jvm")) {
+                engine = Engine.JVM;
+            } else if (arg.equals("--engine=node")) {
+                engine = Engine.NODE;
+            } else if (arg.equals("--no-opt")) {
+                optimize = false;
+            } else if (arg.equals("--dump-types")) {
+                dumpTypes = true;
+            } else if (arg.equals("--node-histogram")) {
+                nodeHistogram = true;
+            } else if (arg.startsWith("--")) {
+                return usage();
             } else {
-                runFile(args[0]);
+                paths.add(arg);
             }
-        } else {
-            runPrompt();
         }
+        // the histogram is counted by the node engine, so asking for it picks that engine unless another was asked for
+        if (nodeHistogram && engine == null) {
+            engine = Engine.NODE;
+        } else if (nodeHistogram && engine != Engine.NODE) {
+            return usage();
+        } else if (engine == null) {
+            engine = Engine.TREE;
+        }
+        interpreter.hotCallThreshold = switch (engine) {
+            case TIERED -> RionFunction.HOT_CALL_THRESHOLD;
+            case JVM -> 1;
+            default -> 0;
+        };
+
+        if (paths.size() > 1) {
+            return usage();
+        } else if (paths.size() == 1) {
+            return runFile(paths.getFirst());
+        }
+        runPrompt();
+        return 0;
+    }
+
+    private static int usage() {
+        System.out.println("Usage: jrion [--engine=tree|tiered|jvm|node] [--no-opt] [--dump-types] [--node-histogram] [path to script]");
+        return 64;
     }
 
-    private static void runFile(String path) throws IOException {
+    private static int runFile(String path) throws IOException {
         //check if file exists
         if (!Files.exists(Paths.get(path))) {
             System.out.println("File not found: " + path);
-            System.exit(64);
+            return 64;
         }
         byte[]  bytes = Files.readAllBytes(Paths.get(path));
         run(new String(bytes, Charset.defaultCharset()));
 
         if (hadError) {
-            System.exit(65);
+            return 65;
         }
         if (hadRuntimeError) {
-            System.exit(70);
+            return 70;
         }
+        return 0;
     }
 
     private static void runPrompt() throws IOException {
@@ -64,11 +129,11 @@ public class Rion {
         }
     }
 
+    // unlike runRepl this keeps hadError set, runFile turns it into the status of the run
     private static void run(String source) {
         List<Stmt> statements = getStatements(source);
 
         if (hadError) {
-            hadError = false;
             return;
         }
 
@@ -76,11 +141,25 @@ public class Rion {
         resolver.resolve(statements);
 
         if (hadError) {
-            hadError = false;
             return;
         }
+        if (optimize) {
+            statements = new Optimizer(interpreter).optimize(statements);
+        }
+        if (optimize || dumpTypes) {
+            inferTypes(statements);
+        }
 
-        interpreter.interpret(statements);
+        switch (engine) {
+            case NODE -> {
+                NodeHistogram histogram = nodeHistogram ? new NodeHistogram() : null;
+                new NodeInterpreter(interpreter, histogram).interpret(statements);
+                if (histogram != null) {
+                    System.out.println(histogram.dump());
+                }
+            }
+            default -> interpreter.interpret(statements);
+        }
     }
 
     private static void runRepl(String source) {
@@ -98,8 +177,25 @@ public class Rion {
             hadError = false;
             return;
         }
+        if (optimize) {
+            statements = new Optimizer(interpreter).optimize(statements);
+        }
+        if (optimize || dumpTypes) {
+            inferTypes(statements);
+        }
 
-        interpreter.repl(statements);
+        switch (engine) {
+            case NODE -> new NodeInterpreter(interpreter).repl(statements);
+            default -> interpreter.repl(statements);
+        }
+    }
+
+    private static void inferTypes(List<Stmt> statements) {
+        TypeInference inference = new TypeInference();
+        inference.infer(statements);
+        if (dumpTypes) {
+            System.out.println(inference.dump());
+        }
     }
 
     private static List<Stmt> getStatements(String source) {
@@ -1,8 +1,41 @@
 package com.kingjoe.orion.jrion;
 
+import java.util.Arrays;
 import java.util.List;
 
 public interface RionCallable {
+    Object[] NO_ARGUMENTS = new Object[0];
+
     Object call(Interpreter interpreter, List<Object> arguments);
     int getArity();
+
+    /*
+     * Entry points for call sites, which pass their arguments as they are instead of collecting them in a list.
+     * A site with up to four arguments calls the entry point of its arity, other sites pass an array. By default
+     * they all end up in the array entry point and that one in the list one, a callable overrides those it can
+     * serve without the array or the list. The arity has already been checked when they are called.
+     */
+    default Object call(Interpreter interpreter, Object[] arguments) {
+        return call(interpreter, Arrays.asList(arguments));
+    }
+
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGUMENTS);
+    }
+
+    default Object call1(Interpreter interpreter, Object first) {
+        return call(interpreter, new Object[]{first});
+    }
+
+    default Object call2(Interpreter interpreter, Object first, Object second) {
+        return call(interpreter, new Object[]{first, second});
+    }
+
+    default Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        return call(interpreter, new Object[]{first, second, third});
+    }
+
+    default Object call4(Interpreter interpreter, Object first, Object second, Object third, Object fourth) {
+        return call(interpreter, new Object[]{first, second, third, fourth});
+    }
 }
@@ -9,6 +9,11 @@ public class RionClass implements RionCallable {
     private final Set<String> publicFields = new HashSet<>();
     private final Map<String, RionFunction> privateMethods = new HashMap<>();
     private final Map<String, RionFunction> publicMethods = new HashMap<>();
+    // shape every instance of the class starts with
+    private final Shape shape;
+    // every method of the class's instances, declared or inherited, by name and tagged with the class defining it
+    private final Map<String, Property> methodTable;
+    private final RionFunction initializer;
 
     public RionClass(Token name,
                      RionClass superClass,
@@ -19,6 +24,9 @@ public class RionClass implements RionCallable {
         this.superClass = superClass;
         storeFields(declaredFields);
         defineClassMethods(methods);
+        this.shape = new Shape(privateFields, publicFields);
+        this.methodTable = buildMethodTable();
+        this.initializer = publicMethods.get(name.lexeme);
     }
 
     @Override
@@ -31,18 +39,26 @@ public class RionClass implements RionCallable {
             Interpreter interpreter,
             List<Object> arguments
     ) {
-        RionInstance rionInstance = new RionInstance(this, privateFields, publicFields);
+        return call(interpreter, arguments.toArray());
+    }
+
+    @Override
+    public Object call(
+            Interpreter interpreter,
+            Object[] arguments
+    ) {
+        RionInstance rionInstance = new RionInstance(this, shape);
 
-        Optional<RionFunction> initializer = getClassInitializer();
-        initializer.ifPresent(rionFunction -> rionFunction.bind(rionInstance, this.superClass).call(interpreter, arguments));
+        if (initializer != null) {
+            initializer.call(interpreter, rionInstance, superClass, arguments);
+        }
 
         return rionInstance;
     }
 
     @Override
     public int getArity() {
-        Optional<RionFunction> initializer = getClassInitializer();
-        return initializer.map(RionFunction::getArity).orElse(0);
+        return initializer == null ? 0 : initializer.getArity();
     }
 
     public String getName() {
@@ -50,70 +66,72 @@ public class RionClass implements RionCallable {
     }
 
     /*
-     * return any method defined in the class/super class except the initializer
+     * return any method defined in the class/super class except the initializer, null when there is none
      */
-    public AbstractMap.SimpleImmutableEntry<RionFunction, RionClass> findMethod(Environment environment, Token name) {
-        if (this.name.lexeme.equals(name.lexeme)) {
-            return new AbstractMap.SimpleImmutableEntry<>(null, null);
+    Property findMethod(Environment environment, Token name) {
+        Property method = methodTable.get(name.lexeme);
+        if (method != null && method.kind() == PropertyKind.PRIVATE_METHOD) {
+            method.owner().checkIfPrivateMethodAccessIsAllowed(environment, name);
         }
+        return method;
+    }
 
-        if (publicMethods.containsKey(name.lexeme)) {
-            return new AbstractMap.SimpleImmutableEntry<>(publicMethods.get(name.lexeme), this.superClass);
+    void checkIfPrivateMethodAccessIsAllowed(
+            Environment environment,
+            Token name
+    ) {
+        // only a method of the class where the private method is defined can access it
+        if (!(environment.receiver() instanceof RionInstance instance) || instance.getRionClass() != this) {
+            throw privateMethodError(name);
         }
+    }
 
-        if (privateMethods.containsKey(name.lexeme)) {
-            RuntimeError error = new RuntimeError(name,
-                                                  "method '" + name.lexeme + "' is private in class '" + this.name.lexeme + "'.");
-            try {
-                // if environment contains 'this', then we check
-                // if it is an instance of the class where the method is defined.
-                RionInstance instance =  (RionInstance) environment.get(new Token(TokenType.THIS, "this", "this", 0));
-                if (instance.getRionClass() != this) {
-                    throw error;
-                }
-            } catch (RuntimeError e) {
-                throw error;
-            }
-            return new AbstractMap.SimpleImmutableEntry<>(privateMethods.get(name.lexeme), this.superClass);
-        }
+    RuntimeError privateMethodError(Token name) {
+        return new RuntimeError(name, "method '" + name.lexeme + "' is private in class '" + this.name.lexeme + "'.");
+    }
 
-        if (superClass != null) {
-            return superClass.findMethod(environment, name);
-        }
+    enum PropertyKind {
+        PUBLIC_FIELD, PRIVATE_FIELD, SUPER_FIELD, METHOD, PRIVATE_METHOD, UNCACHED
+    }
 
-        return new AbstractMap.SimpleImmutableEntry<>(null, null);
+    /*
+     * what a property name resolves to on instances of a class. slot is where a declared field is in the instance,
+     * owner is the class declaring a private method, and superClass the one its bound method gets.
+     */
+    record Property(PropertyKind kind, int slot, RionFunction method, RionClass owner, RionClass superClass) {
+        static final Property UNCACHED = new Property(PropertyKind.UNCACHED, -1, null, null, null);
     }
 
-    public Optional<RionFunction> findMethodInternal(String name) {
-        //don't consider a class initializer as a method, hence return nothing when name equals the initializer name.
-        if (this.name.lexeme.equals(name)) {
-            return Optional.empty();
+    /*
+     * the lookup RionInstance.get and set make for the name, minus the access checks since those depend on where
+     * the property is accessed from. Names those lookups report as undefined, and a method shadowed by a public
+     * field an instance may or may not have set on its superclass, are left to them.
+     */
+    Property resolveProperty(String name) {
+        if (publicFields.contains(name)) {
+            return new Property(PropertyKind.PUBLIC_FIELD, shape.publicSlot(name), null, this, null);
+        }
+        if (privateFields.contains(name)) {
+            return new Property(PropertyKind.PRIVATE_FIELD, shape.privateSlot(name), null, this, null);
         }
 
-        if (publicMethods.containsKey(name)) {
-            return Optional.of(publicMethods.get(name));
+        boolean isSuperField = superClass != null && superClass.publicFields.contains(name);
+        Property method = methodTable.get(name);
+        if (method != null) {
+            return isSuperField ? Property.UNCACHED : method;
         }
 
-        return Optional.ofNullable(privateMethods.get(name));
+        return isSuperField ? new Property(PropertyKind.SUPER_FIELD, -1, null, this, null) : Property.UNCACHED;
     }
 
-    public Optional<String> findPrivateField(String name) {
-        if (privateFields.contains(name)) {
-            return Optional.of(name);
-        }
-        return Optional.empty();
+    boolean hasPublicField(String name) {
+        return publicFields.contains(name);
     }
 
-    public Optional<String> findPublicField(String name) {
-        if (publicFields.contains(name)) {
-            return Optional.of(name);
-        }
-        return Optional.empty();
+    public RionFunction getInitializer() {
+        return initializer;
     }
 
-    public Optional<RionFunction> getClassInitializer() {
-        return Optional.ofNullable(publicMethods.get(name.lexeme));
-    }
     public RionClass getSuperClass() {
         return superClass;
     }
@@ -128,6 +146,21 @@ public class RionClass implements RionCallable {
         }
     }
 
+    /*
+     * the methods of the superclass overridden by the class's own, public ones over private ones of the same name as
+     * within a class. A lookup never went past a class named like the method, so the initializer is left out, and
+     * with it any inherited method that has the class's name.
+     */
+    private Map<String, Property> buildMethodTable() {
+        Map<String, Property> table = superClass == null ? new HashMap<>() : new HashMap<>(superClass.methodTable);
+        privateMethods.forEach((methodName, method) ->
+                table.put(methodName, new Property(PropertyKind.PRIVATE_METHOD, -1, method, this, superClass)));
+        publicMethods.forEach((methodName, method) ->
+                table.put(methodName, new Property(PropertyKind.METHOD, -1, method, this, superClass)));
+        table.remove(name.lexeme);
+        return table;
+    }
+
     private void storeFields(Set<String> declaredFields) {
         for (String field : declaredFields) {
             if (field.startsWith("_")) {
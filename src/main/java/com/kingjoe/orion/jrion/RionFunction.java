@@ -3,26 +3,38 @@ package com.kingjoe.orion.jrion;
 import java.util.List;
 
 public class RionFunction implements RionCallable {
+    // number of interpreted calls after which a function is compiled to jvm bytecode when tiering is enabled
+    static final int HOT_CALL_THRESHOLD = 1_000;
+
     private final Stmt.Function declaration;
     private final Environment closure;
     private final String type;
+    // set once a method is bound, they fill the first two slots of the method's frame
+    private final RionInstance instance;
+    private final RionClass superClass;
 
     public RionFunction(Stmt.Function declaration,
                         Environment closure,
                         String type
+    ) {
+        this(declaration, closure, type, null, null);
+    }
+
+    private RionFunction(Stmt.Function declaration,
+                         Environment closure,
+                         String type,
+                         RionInstance instance,
+                         RionClass superClass
     ) {
         this.declaration = declaration;
         this.closure = closure;
         this.type = type;
+        this.instance = instance;
+        this.superClass = superClass;
     }
 
     RionFunction bind(RionInstance rionInstance, RionClass superClass) {
-        Environment environment = new Environment(closure);
-        environment.define("this", rionInstance);
-        if (superClass != null) {
-            environment.define("super", superClass);
-        }
-        return new RionFunction(declaration, environment, "method");
+        return new RionFunction(declaration, closure, "method", rionInstance, superClass);
     }
 
     @Override
@@ -30,20 +42,214 @@ public class RionFunction implements RionCallable {
             Interpreter interpreter,
             List<Object> arguments
     ) {
-        Environment environment = new Environment(closure);
+        return call(interpreter, instance, superClass, arguments.toArray());
+    }
 
-        for (int i = 0; i < declaration.parameters.size(); i++) {
-            environment.define(declaration.parameters.get(i).lexeme, arguments.get(i));
+    @Override
+    public Object call(
+            Interpreter interpreter,
+            Object[] arguments
+    ) {
+        return call(interpreter, instance, superClass, arguments);
+    }
+
+    /*
+     * the fixed arity entry points define the arguments in the new frame right away.
+     */
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return call0(interpreter, instance, superClass);
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object first) {
+        return call1(interpreter, instance, superClass, first);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        return call2(interpreter, instance, superClass, first, second);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        return call3(interpreter, instance, superClass, first, second, third);
+    }
+
+    @Override
+    public Object call4(Interpreter interpreter, Object first, Object second, Object third, Object fourth) {
+        return call4(interpreter, instance, superClass, first, second, third, fourth);
+    }
+
+    /*
+     * the same entry points for calling the function as a method of instance without binding it to the instance
+     * first, as a call of 'object.method(...)' does.
+     */
+    Object call0(Interpreter interpreter, RionInstance instance, RionClass superClass) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return complete(interpreter, compiled.call0(closure, instance, superClass));
+        }
+        return complete(interpreter, run(interpreter, frame(instance, superClass)));
+    }
+
+    Object call1(Interpreter interpreter, RionInstance instance, RionClass superClass, Object first) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return complete(interpreter, compiled.call1(closure, instance, superClass, first));
         }
+        Environment environment = frame(instance, superClass);
+        environment.define(parameter(0), first);
+        return complete(interpreter, run(interpreter, environment));
+    }
 
-        try {
-            interpreter.executeBlock((Stmt.Block) declaration.body, new Environment(environment));
-        } catch (Signal.Return r) {
-            return r.value;
+    Object call2(Interpreter interpreter, RionInstance instance, RionClass superClass, Object first, Object second) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return complete(interpreter, compiled.call2(closure, instance, superClass, first, second));
+        }
+        Environment environment = frame(instance, superClass);
+        environment.define(parameter(0), first);
+        environment.define(parameter(1), second);
+        return complete(interpreter, run(interpreter, environment));
+    }
+
+    Object call3(
+            Interpreter interpreter,
+            RionInstance instance,
+            RionClass superClass,
+            Object first,
+            Object second,
+            Object third
+    ) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return complete(interpreter, compiled.call3(closure, instance, superClass, first, second, third));
+        }
+        Environment environment = frame(instance, superClass);
+        environment.define(parameter(0), first);
+        environment.define(parameter(1), second);
+        environment.define(parameter(2), third);
+        return complete(interpreter, run(interpreter, environment));
+    }
+
+    Object call4(
+            Interpreter interpreter,
+            RionInstance instance,
+            RionClass superClass,
+            Object first,
+            Object second,
+            Object third,
+            Object fourth
+    ) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return complete(interpreter, compiled.call4(closure, instance, superClass, first, second, third, fourth));
+        }
+        Environment environment = frame(instance, superClass);
+        environment.define(parameter(0), first);
+        environment.define(parameter(1), second);
+        environment.define(parameter(2), third);
+        environment.define(parameter(3), fourth);
+        return complete(interpreter, run(interpreter, environment));
+    }
+
+    /*
+     * calls the function as a method of instance without binding it to the instance first.
+     */
+    Object call(
+            Interpreter interpreter,
+            RionInstance instance,
+            RionClass superClass,
+            Object[] arguments
+    ) {
+        return complete(interpreter, invoke(interpreter, instance, superClass, arguments));
+    }
+
+    /*
+     * A function that ends in a tail call returns Interpreter.TAIL_CALL instead of a value, its callee is then run
+     * here in place of it, so a chain of tail calls takes constant java stack however long it gets.
+     */
+    private static Object complete(
+            Interpreter interpreter,
+            Object value
+    ) {
+        while (value == Interpreter.TAIL_CALL) {
+            RionFunction function = interpreter.tailCallee;
+            Object[] tailArguments = interpreter.tailArguments;
+            interpreter.tailCallee = null;
+            interpreter.tailArguments = null;
+            value = function.invoke(interpreter, function.instance, function.superClass, tailArguments);
+        }
+        return value;
+    }
+
+    private Object invoke(
+            Interpreter interpreter,
+            RionInstance instance,
+            RionClass superClass,
+            Object[] arguments
+    ) {
+        CompiledFunction compiled = compiled(interpreter);
+        if (compiled != null) {
+            return compiled.call(closure, instance, superClass, arguments);
+        }
+        Environment environment = frame(instance, superClass);
+        for (int i = 0; i < arguments.length; i++) {
+            environment.define(parameter(i), arguments[i]);
+        }
+        return run(interpreter, environment);
+    }
+
+    /*
+     * the body compiled to jvm bytecode once the function got hot, null while it is interpreted. A body the
+     * JvmCompiler can't compile stays with the interpreter.
+     */
+    private CompiledFunction compiled(Interpreter interpreter) {
+        if (declaration.compiled == null && interpreter.hotCallThreshold > 0
+                && ++declaration.callCount == interpreter.hotCallThreshold) {
+            declaration.compiled = JvmCompiler.compile(interpreter, declaration, "method".equals(type));
+        }
+        return declaration.compiled;
+    }
+
+    /*
+     * the receiver, the parameters and the locals of the body all live in this one frame
+     */
+    private Environment frame(
+            RionInstance instance,
+            RionClass superClass
+    ) {
+        int size = ((Stmt.Block) declaration.body).slotCount;
+        return instance == null
+                ? new Environment(closure, size)
+                : new Environment.Receiver(closure, instance, superClass, size);
+    }
+
+    private String parameter(int index) {
+        return declaration.parameters.get(index).lexeme;
+    }
+
+    private Object run(
+            Interpreter interpreter,
+            Environment environment
+    ) {
+        if (declaration.node != null) {
+            return declaration.node.execute(environment);
+        }
+
+        if (interpreter.executeBlock((Stmt.Block) declaration.body, environment) == Completion.RETURN) {
+            Object value = interpreter.returnValue;
+            interpreter.returnValue = null;
+            return value;
         }
         return null;
     }
 
+    boolean isDeclaredBy(Stmt.Function declaration) {
+        return this.declaration == declaration;
+    }
+
     @Override
     public int getArity() {
         return declaration.parameters.size();
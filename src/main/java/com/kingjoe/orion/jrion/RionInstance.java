@@ -1,109 +1,155 @@
 package com.kingjoe.orion.jrion;
 
-import java.util.*;
+import java.util.Arrays;
 
 public class RionInstance {
     private final RionClass rionClass;
-    private final Map<String, Object> privateFields = new HashMap<>();
-    private final Map<String, Object> publicFields = new HashMap<>();
+    // the values of the fields, in the slots the shape gives them
+    private Shape shape;
+    private Object[] fields;
 
-    public RionInstance(
+    RionInstance(
             RionClass rionClass,
-            Set<String> privateFields,
-            Set<String> publicFields
+            Shape shape
     ) {
         this.rionClass = rionClass;
-        declareFieldsOnInstance(privateFields, publicFields);
+        this.shape = shape;
+        this.fields = new Object[shape.size];
     }
 
     Object get(
             Environment environment,
             Token name
     ) {
-        if (publicFields.containsKey(name.lexeme)) {
-            return publicFields.get(name.lexeme);
+        int slot = shape.publicSlot(name.lexeme);
+        if (slot >= 0) {
+            return fields[slot];
         }
 
-        if (privateFields.containsKey(name.lexeme)) {
+        slot = shape.privateSlot(name.lexeme);
+        if (slot >= 0) {
             checkIfPrivateFieldAccessIsAllowed(environment, name);
-            return privateFields.get(name.lexeme);
+            return fields[slot];
         }
 
-        AbstractMap.SimpleImmutableEntry<RionFunction, RionClass> methodRes = rionClass.findMethod(environment, name);
-        if (methodRes.getKey() != null) {
-            return methodRes.getKey().bind(this, methodRes.getValue());
+        RionClass.Property method = rionClass.findMethod(environment, name);
+        if (method != null) {
+            return method.method().bind(this, method.superClass());
         }
 
-        Optional<String> fieldInSuper = findPublicFieldInSuperClass(name.lexeme);
-        if (fieldInSuper.isPresent()) {
+        if (isPublicFieldOfSuperClass(name.lexeme)) {
             return null;
         }
 
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "' on '" + this + "'.");
     }
 
+    /*
+     * get with the lookup and the access check already made by a PropertyCache.
+     */
+    Object get(
+            Environment environment,
+            Token name,
+            RionClass.Property property
+    ) {
+        switch (property.kind()) {
+            case PUBLIC_FIELD, PRIVATE_FIELD -> {
+                return fields[property.slot()];
+            }
+            case SUPER_FIELD -> {
+                int slot = shape.publicSlot(name.lexeme);
+                return slot < 0 ? null : fields[slot];
+            }
+            case METHOD, PRIVATE_METHOD -> {
+                return property.method().bind(this, property.superClass());
+            }
+            default -> {
+                return get(environment, name);
+            }
+        }
+    }
+
+    Object set(
+            Environment environment,
+            Token name,
+            RionClass.Property property,
+            Object value
+    ) {
+        switch (property.kind()) {
+            case PUBLIC_FIELD, PRIVATE_FIELD -> {
+                fields[property.slot()] = value;
+                return this;
+            }
+            case SUPER_FIELD -> {
+                setSuperClassField(name.lexeme, value);
+                return this;
+            }
+            default -> {
+                return set(environment, name, value);
+            }
+        }
+    }
+
     Object set(
             Environment environment,
             Token name,
             Object value
     ) {
-        if (publicFields.containsKey(name.lexeme)) {
-            publicFields.put(name.lexeme, value);
+        int slot = shape.publicSlot(name.lexeme);
+        if (slot >= 0) {
+            fields[slot] = value;
             return this;
         }
 
-        if (privateFields.containsKey(name.lexeme)) {
+        slot = shape.privateSlot(name.lexeme);
+        if (slot >= 0) {
             checkIfPrivateFieldAccessIsAllowed(environment, name);
-            privateFields.put(name.lexeme, value);
+            fields[slot] = value;
             return this;
         }
 
-        Optional<String> fieldInSuper = findPublicFieldInSuperClass(name.lexeme);
-        if (fieldInSuper.isPresent()) {
-            publicFields.put(name.lexeme, value);
+        if (isPublicFieldOfSuperClass(name.lexeme)) {
+            setSuperClassField(name.lexeme, value);
             return this;
         }
 
         throw new RuntimeError(name, "Undefined field '" + name.lexeme + "' on '" + this + "'.");
     }
 
-    private void declareFieldsOnInstance(Set<String> privateFields, Set<String> publicFields) {
-        for (String field : privateFields) {
-            this.privateFields.put(field, null);
-        }
-
-        for (String field : publicFields) {
-            this.publicFields.put(field, null);
+    /*
+     * a public field of the superclass only gets a slot once it is first set, by moving the instance to a shape
+     * that has it.
+     */
+    private void setSuperClassField(String name, Object value) {
+        int slot = shape.publicSlot(name);
+        if (slot < 0) {
+            shape = shape.withPublicField(name);
+            fields = Arrays.copyOf(fields, shape.size);
+            slot = shape.size - 1;
         }
+        fields[slot] = value;
     }
 
     private void checkIfPrivateFieldAccessIsAllowed(
             Environment environment,
             Token name
     ) {
-        RuntimeError error = new RuntimeError(name,
-                                              "field '" + name.lexeme + "' is private in class '" + rionClass.getName() + "'.");
-        try {
-            // if environment contains 'this', then we check
-            // if it is an instance of the class where the field is declared
-            Object instance = environment.get(new Token(TokenType.THIS, "this", "this", 0));
-            if (instance != this) {
-                throw error;
-            }
-        } catch (RuntimeError e) {
-            throw error;
+        // only the receiver of the method the access is made from can access its private fields
+        if (environment.receiver() != this) {
+            throw privateFieldError(name);
         }
     }
 
+    RuntimeError privateFieldError(Token name) {
+        return new RuntimeError(name, "field '" + name.lexeme + "' is private in class '" + rionClass.getName() + "'.");
+    }
+
     public RionClass getRionClass() {
         return rionClass;
     }
 
-    private Optional<String> findPublicFieldInSuperClass(String name) {
-        if (rionClass.getSuperClass() != null) {
-            return rionClass.getSuperClass().findPublicField(name);
-        }
-        return Optional.empty();
+    private boolean isPublicFieldOfSuperClass(String name) {
+        return rionClass.getSuperClass() != null && rionClass.getSuperClass().hasPublicField(name);
     }
 
     @Override
@@ -0,0 +1,17 @@
+package com.kingjoe.orion.jrion;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/*
+ * Marks a static method that NativeMethod.bind exposes as a global function, under the method's name unless
+ * another one is given. The parameters of the method make the arity of the function, see NativeMethod for the
+ * types they can have.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface RionNative {
+    String name() default "";
+}
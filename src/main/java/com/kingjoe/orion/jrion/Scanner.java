@@ -162,7 +162,13 @@ public class Scanner {
             }
         }
         String literal = source.substring(start, current);
-        addToken(TokenType.NUMBER, Double.parseDouble(literal));
+        double value = Double.parseDouble(literal);
+        // integral literals that fit an int are integers, see Operators
+        if (literal.indexOf('.') < 0 && value <= Integer.MAX_VALUE) {
+            addToken(TokenType.NUMBER, (int) value);
+        } else {
+            addToken(TokenType.NUMBER, value);
+        }
     }
 
     private char peekNext() {
@@ -0,0 +1,55 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Layout of the fields of an instance, which field lives in which slot of the instance's array. All instances of a
+ * class start out sharing the shape of the fields the class declares. Setting a public field of the superclass moves
+ * an instance on to the shape with that field appended, the transition is kept so instances that set the same
+ * fields in the same order keep sharing shapes. A field never changes slot once it is part of a shape.
+ */
+final class Shape {
+    private final Map<String, Integer> publicSlots;
+    private final Map<String, Integer> privateSlots;
+    private final Map<String, Shape> transitions = new HashMap<>();
+    final int size;
+
+    Shape(Set<String> privateFields, Set<String> publicFields) {
+        this.publicSlots = new HashMap<>();
+        this.privateSlots = new HashMap<>();
+        int slot = 0;
+        for (String field : publicFields) {
+            publicSlots.put(field, slot++);
+        }
+        for (String field : privateFields) {
+            privateSlots.put(field, slot++);
+        }
+        this.size = slot;
+    }
+
+    private Shape(Shape parent, String publicField) {
+        this.publicSlots = new HashMap<>(parent.publicSlots);
+        this.privateSlots = parent.privateSlots;
+        publicSlots.put(publicField, parent.size);
+        this.size = parent.size + 1;
+    }
+
+    /*
+     * slot of the field, or -1 when the shape does not have it.
+     */
+    int publicSlot(String name) {
+        Integer slot = publicSlots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    int privateSlot(String name) {
+        Integer slot = privateSlots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    Shape withPublicField(String name) {
+        return transitions.computeIfAbsent(name, key -> new Shape(this, key));
+    }
+}
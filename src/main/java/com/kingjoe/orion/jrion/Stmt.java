@@ -1,5 +1,6 @@
 package com.kingjoe.orion.jrion;
 
+import java.util.BitSet;
 import java.util.List;
 
 abstract public class Stmt {
@@ -47,6 +48,12 @@ abstract public class Stmt {
         final Token name;
         final List<Token> parameters;
         final Stmt body;
+        // set once the body has been compiled to a node tree
+        Node node;
+        // set once the body has been compiled to jvm bytecode
+        CompiledFunction compiled;
+        // number of calls made to the interpreted body, used to pick functions worth compiling
+        int callCount;
 
         Function(
                 Token name,
@@ -84,6 +91,13 @@ abstract public class Stmt {
 
     public static class Block extends Stmt {
         final List<Stmt> statements;
+        // number of variables declared directly in the block, set by the Resolver
+        int slotCount;
+        // number of assignments to each of those variables anywhere in the program, also set by the Resolver and
+        // shorter than slotCount when the last ones are never assigned
+        int[] assignmentCounts = new int[0];
+        // the variables declared directly in the block that a nested function refers to, also set by the Resolver
+        BitSet capturedSlots = new BitSet();
 
         Block(List<Stmt> statements) {
             this.statements = statements;
@@ -144,6 +158,8 @@ abstract public class Stmt {
     public static class Return extends Stmt {
         final Token keyword;
         final Expr expression;
+        // set by the Resolver when the returned expression is a call, the callee then runs in place of the caller
+        boolean isTailCall;
 
         Return(
                 Token keyword,
@@ -0,0 +1,553 @@
+package com.kingjoe.orion.jrion;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Finds the types the values of expressions are certain to have, following the assignments of the local variables
+ * through branches and loops. It runs on the resolved and optimized statements and writes down what it proved on
+ * the expressions themselves, an operator whose operands are known to be numbers or strings is then evaluated
+ * without checking them again.
+ *
+ * Globals, parameters, fields, elements and the results of calls can hold anything. So can a local that a nested
+ * function assigns, as the function can run between any two statements once it exists. An expression reached
+ * more than once, in a loop or from an inlined function, gets the type of every time it was reached.
+ */
+class TypeInference implements Expr.Visitor<TypeInference.Type>, Stmt.Visitor<Void> {
+
+    enum Type {
+        NIL, BOOLEAN, NUMBER, STRING, ANY;
+
+        Type join(Type other) {
+            return other == null || other == this ? this : ANY;
+        }
+
+        @Override
+        public String toString() {
+            return name().toLowerCase();
+        }
+    }
+
+    /*
+     * The types of the locals of the scopes the statement being inferred is in, innermost last, or null when the
+     * statement can't be reached. The scopes of the enclosing functions are shared by every state of the function
+     * being inferred, only the types of their locals assigned here change, and they change for good.
+     */
+    private List<Type[]> state = new ArrayList<>();
+    private final List<Stmt.Block> blocks = new ArrayList<>();
+    // number of variables defined so far in each scope, which is the slot of the next one
+    private final List<Integer> definedCounts = new ArrayList<>();
+    // first scope of the function being inferred
+    private int functionScope = 0;
+    private final List<Loop> loops = new ArrayList<>();
+    // the locals assigned by a nested function, by the block declaring them
+    private final Map<Stmt.Block, BitSet> captured = new HashMap<>();
+
+    // what is reported by dump, in the order it was first reached, and every type each local was assigned
+    private final Set<Object> reported = new LinkedHashSet<>();
+    private final Map<Stmt.Var, Local> variables = new HashMap<>();
+    private final Map<Stmt.Block, Type[]> assignedTypes = new HashMap<>();
+
+    private record Local(Stmt.Block block, int slot) {
+    }
+
+    private static final class Loop {
+        final int scopeCount;
+        List<Type[]> breaks;
+        List<Type[]> continues;
+
+        Loop(int scopeCount) {
+            this.scopeCount = scopeCount;
+        }
+    }
+
+    void infer(List<Stmt> statements) {
+        inferAll(statements);
+    }
+
+    /*
+     * every binary operation and local variable that was reached, with the types found for it, and every expression
+     * kept in a slot by the loop on the line given
+     */
+    String dump() {
+        StringBuilder dump = new StringBuilder();
+        int operations = 0;
+        int proven = 0;
+        for (Object node : reported) {
+            if (node instanceof Expr.Binary binary) {
+                operations++;
+                if (binary.operands != Type.ANY) {
+                    proven++;
+                }
+                dump.append("[line ").append(binary.operator.line).append("] ")
+                        .append(binary.left.type).append(' ').append(binary.operator.lexeme).append(' ')
+                        .append(binary.right.type).append(" -> ").append(binary.type)
+                        .append(binary.operands == Type.ANY ? " (checked)" : "").append('\n');
+            } else if (node instanceof Stmt.Var var) {
+                dump.append("[line ").append(var.name.line).append("] var ").append(var.name.lexeme).append(": ")
+                        .append(variableType(var)).append('\n');
+            } else if (node instanceof Expr.Hoisted hoisted) {
+                dump.append("[line ").append(hoisted.hoisted.name.line).append("] hoisted ")
+                        .append(source(hoisted.value)).append(": ").append(hoisted.type).append('\n');
+            }
+        }
+        dump.append(proven).append(" of ").append(operations).append(" binary operations proven");
+        return dump.toString();
+    }
+
+    // the text of an expression the Optimizer hoists out of a loop
+    private static String source(Expr expr) {
+        return switch (expr) {
+            case Expr.Literal literal -> literal.value == null ? "nil"
+                    : literal.value instanceof String text ? '"' + text + '"' : literal.value.toString();
+            case Expr.Variable variable -> variable.name.lexeme;
+            case Expr.Grouping grouping -> "(" + source(grouping.expression) + ")";
+            case Expr.Unary unary -> unary.operator.lexeme + source(unary.right);
+            case Expr.Binary binary -> source(binary.left) + " " + binary.operator.lexeme + " " + source(binary.right);
+            case Expr.Logical logical -> source(logical.left) + " " + logical.operator.lexeme + " "
+                    + source(logical.right);
+            case Expr.Call call when call.callee instanceof Expr.Get get ->
+                    source(get.object) + "." + get.property.lexeme + "()";
+            default -> "?";
+        };
+    }
+
+    private Type variableType(Stmt.Var var) {
+        Local local = variables.get(var);
+        BitSet slots = captured.get(local.block());
+        return slots != null && slots.get(local.slot()) ? Type.ANY : assignedTypes.get(local.block())[local.slot()];
+    }
+
+    private void inferAll(List<Stmt> statements) {
+        for (Stmt statement : statements) {
+            if (state == null) {
+                return;
+            }
+            statement.accept(this);
+        }
+    }
+
+    private Type infer(Expr expr) {
+        Type type = expr.accept(this);
+        expr.type = type.join(expr.type);
+        return type;
+    }
+
+    @Override
+    public Type visitBinaryExpression(Expr.Binary expr) {
+        Type left = infer(expr.left);
+        Type right = infer(expr.right);
+        Type operands = Type.ANY;
+        Type type = switch (expr.operator.type) {
+            case MINUS, SLASH, MODULO -> Type.NUMBER;
+            case GREATER, GREATER_EQUAL, LESS, LESS_EQUAL, BANG_EQUAL, EQUAL_EQUAL -> Type.BOOLEAN;
+            case STAR -> left == Type.NUMBER && right == Type.NUMBER ? Type.NUMBER
+                    : left == Type.STRING ? Type.STRING : Type.ANY;
+            case PLUS -> left == Type.NUMBER && right == Type.NUMBER ? Type.NUMBER
+                    : left == Type.STRING || right == Type.STRING ? Type.STRING : Type.ANY;
+            default -> Type.ANY;
+        };
+        if (left == Type.NUMBER && right == Type.NUMBER) {
+            operands = Type.NUMBER;
+        } else if (expr.operator.type == TokenType.PLUS && type == Type.STRING) {
+            operands = Type.STRING;
+        }
+        expr.operands = operands.join(expr.operands);
+        reported.add(expr);
+        return type;
+    }
+
+    // the right operand only runs for some values of the left one
+    @Override
+    public Type visitLogicalExpression(Expr.Logical expr) {
+        infer(expr.left);
+        List<Type[]> skipped = copy(state);
+        infer(expr.right);
+        state = join(state, skipped);
+        return Type.BOOLEAN;
+    }
+
+    @Override
+    public Type visitGroupingExpression(Expr.Grouping expr) {
+        return infer(expr.expression);
+    }
+
+    @Override
+    public Type visitLiteralExpression(Expr.Literal expr) {
+        return switch (expr.value) {
+            case null -> Type.NIL;
+            case Boolean b -> Type.BOOLEAN;
+            case Integer i -> Type.NUMBER;
+            case Double d -> Type.NUMBER;
+            case String s -> Type.STRING;
+            default -> Type.ANY;
+        };
+    }
+
+    @Override
+    public Type visitThisExpression(Expr.This expr) {
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitUnaryExpression(Expr.Unary expr) {
+        infer(expr.right);
+        return expr.operator.type == TokenType.BANG ? Type.BOOLEAN : Type.NUMBER;
+    }
+
+    @Override
+    public Type visitVariableExpression(Expr.Variable expr) {
+        if (expr.isGlobal()) {
+            return Type.ANY;
+        }
+        int scope = blocks.size() - 1 - expr.depth;
+        if (scope < functionScope || isCaptured(scope, expr.slot)) {
+            return Type.ANY;
+        }
+        Type[] types = state.get(scope);
+        return expr.slot < types.length ? types[expr.slot] : Type.ANY;
+    }
+
+    @Override
+    public Type visitAssignExpression(Expr.Assign expr) {
+        Type type = infer(expr.value);
+        if (!expr.isGlobal()) {
+            assign(blocks.size() - 1 - expr.depth, expr.slot, type);
+        }
+        return type;
+    }
+
+    @Override
+    public Type visitIndexAssignExpression(Expr.IndexAssign expr) {
+        infer(expr.indexee);
+        infer(expr.index);
+        infer(expr.value);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitCallExpression(Expr.Call expr) {
+        infer(expr.callee);
+        inferExpressions(expr.arguments);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitIndexingExpression(Expr.Indexing expr) {
+        infer(expr.indexee);
+        infer(expr.index);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitGetExpression(Expr.Get expr) {
+        infer(expr.object);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitSetExpression(Expr.Set expr) {
+        infer(expr.object);
+        infer(expr.value);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitAnonFunctionExpression(Expr.AnonFunc expr) {
+        inferFunction(expr.declaration, 0);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitArrayExpression(Expr.Array expr) {
+        inferExpressions(expr.elements);
+        return Type.ANY;
+    }
+
+    @Override
+    public Type visitMapExpression(Expr.Map expr) {
+        inferExpressions(expr.keys);
+        inferExpressions(expr.values);
+        return Type.ANY;
+    }
+
+    /*
+     * the arguments are stored in their slots before either the copy of the body or the call runs, and the call
+     * evaluates them again
+     */
+    @Override
+    public Type visitInlineExpression(Expr.Inline expr) {
+        List<Expr> arguments = expr.call.arguments;
+        for (int i = 0; i < arguments.size(); i++) {
+            assign(blocks.size() - 1, expr.slot + i, infer(arguments.get(i)));
+        }
+        List<Type[]> called = copy(state);
+        infer(expr.body);
+        List<Type[]> inlined = state;
+        state = called;
+        infer(expr.call);
+        state = join(state, inlined);
+        return Type.ANY;
+    }
+
+    // the target is only assigned what is built once the loop is done
+    @Override
+    public Type visitAppendExpression(Expr.Append expr) {
+        inferExpressions(expr.parts);
+        return expr.parts.isEmpty() ? Type.ANY : Type.NIL;
+    }
+
+    @Override
+    public Type visitHoistedExpression(Expr.Hoisted expr) {
+        Type type = infer(expr.value);
+        reported.add(expr);
+        return type;
+    }
+
+    @Override
+    public Type visitSuperExpression(Expr.Super expr) {
+        if (expr.arguments != null) {
+            inferExpressions(expr.arguments);
+        }
+        return Type.ANY;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        infer(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        Type type = stmt.initializer == null ? Type.NIL : infer(stmt.initializer);
+        if (!blocks.isEmpty()) {
+            int scope = blocks.size() - 1;
+            int slot = define();
+            assign(scope, slot, type);
+            variables.put(stmt, new Local(blocks.getLast(), slot));
+            reported.add(stmt);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        if (!blocks.isEmpty()) {
+            define();
+        }
+        if (stmt.superClass != null) {
+            infer(stmt.superClass);
+        }
+        for (Stmt.Var field : stmt.fields) {
+            if (field.initializer != null) {
+                int enclosingScope = functionScope;
+                functionScope = blocks.size();
+                infer(field.initializer);
+                functionScope = enclosingScope;
+            }
+        }
+        for (Stmt.Function method : stmt.methods) {
+            inferFunction(method, 2);
+        }
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        if (!blocks.isEmpty()) {
+            define();
+        }
+        inferFunction(stmt, 0);
+        return null;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        enterScope(stmt, 0);
+        inferAll(stmt.statements);
+        exitScope();
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        infer(stmt.condition);
+        List<Type[]> otherwise = copy(state);
+        stmt.thenBranch.accept(this);
+        List<Type[]> then = state;
+        state = otherwise;
+        if (stmt.elseBranch != null) {
+            stmt.elseBranch.accept(this);
+        }
+        state = join(then, state);
+        return null;
+    }
+
+    /*
+     * The body is inferred again with the types it leaves its locals with, until it leaves them with the types it
+     * started with. A type only ever becomes ANY on the way, so that takes a few rounds at most.
+     */
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        List<Type[]> entry = state;
+        while (true) {
+            Loop loop = new Loop(blocks.size());
+            loops.add(loop);
+            state = copy(entry);
+            infer(stmt.condition);
+            List<Type[]> exit = copy(state);
+            stmt.body.accept(this);
+            loops.removeLast();
+            List<Type[]> next = join(entry, join(state, loop.continues));
+            if (isSame(next, entry)) {
+                state = join(exit, loop.breaks);
+                return null;
+            }
+            entry = next;
+        }
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if (stmt.expression != null) {
+            infer(stmt.expression);
+        }
+        state = null;
+        return null;
+    }
+
+    @Override
+    public Void visitBreakStmt(Stmt.Break stmt) {
+        Loop loop = loops.getLast();
+        loop.breaks = join(loop.breaks, state.subList(0, loop.scopeCount));
+        state = null;
+        return null;
+    }
+
+    @Override
+    public Void visitContinueStmt(Stmt.Continue stmt) {
+        Loop loop = loops.getLast();
+        loop.continues = join(loop.continues, state.subList(0, loop.scopeCount));
+        state = null;
+        return null;
+    }
+
+    private void inferExpressions(List<Expr> exprs) {
+        for (Expr expr : exprs) {
+            infer(expr);
+        }
+    }
+
+    /*
+     * A function is inferred where it is declared, and its body is reachable however the enclosing code continues.
+     * Its parameters, and 'this' and 'super' for a method, fill the first slots of its frame.
+     */
+    private void inferFunction(Stmt.Function function, int receiverSlots) {
+        List<Type[]> enclosingState = state;
+        List<Loop> enclosingLoops = new ArrayList<>(loops);
+        int enclosingScope = functionScope;
+        loops.clear();
+        state = new ArrayList<>(enclosingState);
+        functionScope = blocks.size();
+
+        Stmt.Block body = (Stmt.Block) function.body;
+        enterScope(body, receiverSlots + function.parameters.size());
+        inferAll(body.statements);
+        if (state != null) {
+            exitScope();
+        } else {
+            blocks.removeLast();
+            definedCounts.removeLast();
+        }
+
+        state = enclosingState;
+        functionScope = enclosingScope;
+        loops.addAll(enclosingLoops);
+    }
+
+    private void enterScope(Stmt.Block block, int defined) {
+        blocks.add(block);
+        definedCounts.add(defined);
+        if (state != null) {
+            Type[] types = new Type[block.slotCount];
+            Arrays.fill(types, Type.ANY);
+            state.add(types);
+        }
+    }
+
+    private void exitScope() {
+        blocks.removeLast();
+        definedCounts.removeLast();
+        if (state != null) {
+            state.removeLast();
+        }
+    }
+
+    private int define() {
+        int slot = definedCounts.getLast();
+        definedCounts.set(definedCounts.size() - 1, slot + 1);
+        return slot;
+    }
+
+    /*
+     * a local of an enclosing function assigned here is captured, it holds anything from now on
+     */
+    private void assign(int scope, int slot, Type type) {
+        if (state == null || scope < 0 || slot >= state.get(scope).length) {
+            return;
+        }
+        if (scope < functionScope) {
+            captured.computeIfAbsent(blocks.get(scope), block -> new BitSet()).set(slot);
+        }
+        state.get(scope)[slot] = isCaptured(scope, slot) ? Type.ANY : type;
+        Type[] assigned = assignedTypes.computeIfAbsent(blocks.get(scope), block -> new Type[block.slotCount]);
+        assigned[slot] = type.join(assigned[slot]);
+    }
+
+    private boolean isCaptured(int scope, int slot) {
+        BitSet slots = captured.get(blocks.get(scope));
+        return slots != null && slots.get(slot);
+    }
+
+    // the scopes of enclosing functions are shared, not copied
+    private List<Type[]> copy(List<Type[]> state) {
+        if (state == null) {
+            return null;
+        }
+        List<Type[]> copy = new ArrayList<>(state.size());
+        for (int i = 0; i < state.size(); i++) {
+            copy.add(i < functionScope ? state.get(i) : state.get(i).clone());
+        }
+        return copy;
+    }
+
+    private List<Type[]> join(List<Type[]> a, List<Type[]> b) {
+        if (a == null || b == null) {
+            return copy(a == null ? b : a);
+        }
+        List<Type[]> joined = copy(a);
+        for (int i = functionScope; i < joined.size(); i++) {
+            Type[] types = joined.get(i);
+            for (int slot = 0; slot < types.length; slot++) {
+                types[slot] = types[slot].join(b.get(i)[slot]);
+            }
+        }
+        return joined;
+    }
+
+    private boolean isSame(List<Type[]> a, List<Type[]> b) {
+        for (int i = functionScope; i < a.size(); i++) {
+            if (!Arrays.equals(a.get(i), b.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
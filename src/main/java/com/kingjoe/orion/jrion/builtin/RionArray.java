@@ -11,6 +11,7 @@ import java.util.List;
 public class RionArray implements RionIndexable {
     private final Interpreter interpreter;
     private final List<Object> elements;
+    private RionCallable length;
 
     public RionArray(Interpreter interpreter, List<Object> elements) {
         this.interpreter = interpreter;
@@ -18,49 +19,69 @@ public class RionArray implements RionIndexable {
     }
 
     public Object get(Token token, Object index) {
-        if (!interpreter.isWholeNumber(index)) {
-            throw new RuntimeError(token, "index should be a whole number");
-        }
-        int intIndex = ((Double) index).intValue();
-        if (intIndex >= elements.size()) {
-            throw new RuntimeError(token, String.format("index %s out of bound for size %s", intIndex, elements.size()));
+        return get(token, intIndex(token, index));
+    }
+
+    public Object get(Token token, int index) {
+        if (index >= elements.size()) {
+            throw new RuntimeError(token, String.format("index %s out of bound for size %s", index, elements.size()));
         }
-        return elements.get(intIndex);
+        return elements.get(index);
     }
 
     public void set(Token token, Object index, Object value) {
-        if (!interpreter.isWholeNumber(index)) {
-            throw new RuntimeError(token, "index should be a whole number");
-        }
-        int intIndex = ((Double) index).intValue();
-        if (intIndex >= 0 && intIndex < elements.size()) {
-            elements.set(intIndex, value);
+        set(token, intIndex(token, index), value);
+    }
+
+    public void set(Token token, int index, Object value) {
+        if (index >= 0 && index < elements.size()) {
+            elements.set(index, value);
         } else {
-            throw new RuntimeError(token, String.format("index %s out of bound for size %s. if you were attempting to append to the array, index should be the current size of the array", index, elements.size()));
+            // the index is reported as the number it was given as, which used to always be a double
+            throw new RuntimeError(token, String.format("index %s out of bound for size %s. if you were attempting to append to the array, index should be the current size of the array", (double) index, elements.size()));
         }
     }
 
     @Override
     public RionCallable getProperty(Token token, String property) {
         if ("length".equals(property)) {
-            return new RionCallable() {
-                @Override
-                public Object call(
-                        Interpreter interpreter,
-                        List<Object> arguments
-                ) {
-                    return size().doubleValue();
-                }
+            // the same callable every time, so a call site that checked it once does not check it again
+            if (length == null) {
+                length = new RionCallable() {
+                    @Override
+                    public Object call(
+                            Interpreter interpreter,
+                            List<Object> arguments
+                    ) {
+                        return size();
+                    }
+
+                    @Override
+                    public Object call0(Interpreter interpreter) {
+                        return size();
+                    }
 
-                @Override
-                public int getArity() {
-                    return 0;
-                }
-            };
+                    @Override
+                    public int getArity() {
+                        return 0;
+                    }
+                };
+            }
+            return length;
         }
         throw new RuntimeError(token, "property '" + property + "' does not exist in array.");
     }
 
+    private int intIndex(Token token, Object index) {
+        if (index instanceof Integer integer) {
+            return integer;
+        }
+        if (!interpreter.isWholeNumber(index)) {
+            throw new RuntimeError(token, "index should be a whole number");
+        }
+        return ((Double) index).intValue();
+    }
+
     public Integer size() {
         return elements.size();
     }
@@ -28,10 +28,11 @@ public class RionMap implements RionIndexable {
             Token token,
             Object key
     ) {
-        if (!map.containsKey(key)) {
+        Object hashKey = hashKey(key);
+        if (!map.containsKey(hashKey)) {
             throw new RuntimeError(token, "key: '" + interpreter.stringify(key) + "' not present in map.");
         }
-        return map.get(key);
+        return map.get(hashKey);
     }
 
     @Override
@@ -43,7 +44,12 @@ public class RionMap implements RionIndexable {
                         Interpreter interpreter,
                         List<Object> arguments
                 ) {
-                    return map.containsKey(arguments.getFirst());
+                    return call1(interpreter, arguments.getFirst());
+                }
+
+                @Override
+                public Object call1(Interpreter interpreter, Object key) {
+                    return map.containsKey(hashKey(key));
                 }
 
                 @Override
@@ -99,7 +105,15 @@ public class RionMap implements RionIndexable {
         if (key instanceof RionIndexable) {
             throw new RuntimeError(token, "provided key cannot be hashed.");
         }
-        map.put(key, value);
+        map.put(hashKey(key), value);
+    }
+
+    // a number is the same key whether it is held as an integer or as a double, and keys hash like the doubles they were
+    private static Object hashKey(Object key) {
+        if (key instanceof Integer integer) {
+            return (double) integer;
+        }
+        return key;
     }
 
 
@@ -20,6 +20,6 @@ class AstPrinterTest {
         String output = new AstPrinter().print(expression.expression);
 
         //Then
-        assertEquals("(+ (- (+ (group (- 4.0 5.0)) (/ 5.0 6.0)) (* 3.0 6.0)) 1.0)", output);
+        assertEquals("(+ (- (+ (group (- 4 5)) (/ 5 6)) (* 3 6)) 1)", output);
     }
 }
\ No newline at end of file
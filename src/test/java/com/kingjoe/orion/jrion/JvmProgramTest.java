@@ -0,0 +1,140 @@
+package com.kingjoe.orion.jrion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Runs every program of the suite with every function compiled to jvm bytecode the first time it is called.
+ */
+class JvmProgramTest extends ProgramTest {
+
+    @Override
+    protected String[] options() {
+        return new String[]{"--engine=jvm"};
+    }
+
+    @Test
+    void testCompiledFunctionsKeepTheirBehaviour() throws IOException {
+        //Given
+        String source = """
+                class Shape {
+                    var name;
+                    Shape(name) {
+                        this.name = name;
+                    }
+                    describe() {
+                        return "shape " + this.name;
+                    }
+                }
+                class Square < Shape {
+                    var side;
+                    Square(side) {
+                        super("square");
+                        this.side = side;
+                    }
+                    area() {
+                        return this.side * this.side;
+                    }
+                    describe() {
+                        return super.describe() + " of area " + this.area();
+                    }
+                }
+                fun counter() {
+                    var count = 0;
+                    return fun () {
+                        count = count + 1;
+                        return count;
+                    };
+                }
+                fun sum(a, b, c, d, e, f) {
+                    var total = 0;
+                    var i = 0;
+                    while (i < 10) {
+                        i = i + 1;
+                        if (i % 2 == 0) {
+                            continue;
+                        }
+                        total = total + i;
+                    }
+                    return total + a + b + c + d + e + f;
+                }
+                fun numbers(n) {
+                    var zero = n - n;
+                    return [n / 2, -zero, zero == -zero, 7 % -3, -7 % 3, n * 0.5];
+                }
+                var next = counter();
+                next();
+                println(next());
+                println(Square(3).describe());
+                println(sum(1, 2, 3, 4, 5, 6));
+                println(numbers(3));
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                2
+                shape square of area 9
+                46
+                [1.5, -0, false, 1, -1, 1.5]""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testDivisionByZeroInCompiledFunction() throws IOException {
+        //Given
+        String source = """
+                fun half(n) {
+                    return n / (n - n);
+                }
+                println(half(4));
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        assertTrue(result.error.contains("[line 2] Invalid operation, division by zero."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testFunctionIndexingArraysWithNumbersIsCompiled() throws IOException {
+        //Given
+        String source = """
+                fun run() {
+                    var arr = [0, 0, 0, 0, 0, 0, 0, 0, 0, 0];
+                    for (var round = 0; round < 1000; round = round + 1) {
+                        for (var i = 0; i < 10; i = i + 1) {
+                            arr[i] = arr[i] + i;
+                        }
+                    }
+                    return arr[9];
+                }
+                println(run());
+                """;
+        Interpreter interpreter = new Interpreter();
+        interpreter.hotCallThreshold = 1;
+        List<Stmt> statements = new Parser(new Scanner(source).scanTokens()).parse();
+        new Resolver(interpreter).resolve(statements);
+        statements = new Optimizer(interpreter).optimize(statements);
+        new TypeInference().infer(statements);
+        Stmt.Function run = (Stmt.Function) statements.get(0);
+
+        //When
+        String output = executeProgram(source).output;
+        interpreter.interpret(statements);
+
+        //Then
+        assertEquals("9000", output);
+        assertNotNull(run.compiled);
+    }
+}
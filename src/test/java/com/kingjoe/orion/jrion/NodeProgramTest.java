@@ -0,0 +1,170 @@
+package com.kingjoe.orion.jrion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Runs every program of the suite as a tree of pre-bound nodes instead of walking the ast.
+ */
+class NodeProgramTest extends ProgramTest {
+
+    @Override
+    protected String[] options() {
+        return new String[]{"--engine=node"};
+    }
+
+    @Test
+    void testOperatorsDeoptimizeWhenOperandTypesChange() throws IOException {
+        //Given
+        String source = """
+                fun plus(a, b) {
+                    return a + b;
+                }
+                fun smaller(a, b) {
+                    return a < b;
+                }
+                var total = 0;
+                for (var i = 0; i < 100; i = i + 1) {
+                    total = plus(total, i);
+                }
+                println(total);
+                println(plus("jr", "ion"));
+                println(plus("n", 1));
+                println(plus(2, 0.5));
+                println(smaller(1, 2));
+                println(smaller("a", "b"));
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                4950
+                jrion
+                n1
+                2.5
+                true""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 5] Operands must be a number."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testVariablesHoldingUnboxedNumbersChangeType() throws IOException {
+        //Given
+        String source = """
+                fun run() {
+                    var x = 1;
+                    var read = fun () { return x; };
+                    for (var i = 0; i < 3; i = i + 1) {
+                        x = x * 2 + i;
+                    }
+                    println(read());
+                    var values = [x, -x];
+                    println(values[0] + values[1]);
+                    x = "x" + "s";
+                    println(read());
+                    x = 0.5;
+                    return x + x / 2;
+                }
+                var g = 0;
+                g = run();
+                println(g);
+                g = g + 1;
+                println(g);
+                g = "done";
+                println(g);
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                12
+                0
+                xs
+                0.75
+                1.75
+                done""";
+        assertEquals(expected, result.output);
+    }
+
+    @Test
+    void testFusedLoopIdiomsFallBackWhenLocalsChangeType() throws IOException {
+        //Given
+        String source = """
+                fun run() {
+                    var i = 2147483646;
+                    i = i + 1;
+                    i = i + 1;
+                    println(i - 2147483000);
+                    var d = 0.5;
+                    d = d - 1;
+                    println(d);
+                    var values = [1, 2.5, "c"];
+                    var total = 0;
+                    var k = 0;
+                    var n = 3;
+                    while (k < n) {
+                        total = total + values[k];
+                        k = k + 1;
+                    }
+                    println(total);
+                    var scores = {"x": 4};
+                    var key = "x";
+                    println(scores[key]);
+                    var x = 1;
+                    var bump = fun () { x = 10; return 1; };
+                    x = x + bump();
+                    println(x);
+                    var s = "a";
+                    var t = "b";
+                    println(s < t);
+                }
+                run();
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                648
+                -0.5
+                3.5c
+                4
+                2""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 27] Operands must be a number."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testNodeHistogramIsOnlyCountedByTheNodeEngine() throws IOException {
+        //Given
+        String source = """
+                var total = 0;
+                for (var i = 0; i < 3; i = i + 1) {
+                    total = total + i;
+                }
+                println(total);
+                """;
+
+        //When
+        Console counted = executeProgram(source, "--node-histogram");
+        Console rejected = executeProgram(source, "--engine=tree", "--node-histogram");
+
+        //Then
+        assertTrue(counted.output.startsWith("3\nnode executions:"));
+        assertTrue(counted.output.contains("fused nodes saved"));
+        assertEquals(0, counted.status);
+        assertTrue(rejected.output.startsWith("Usage: jrion"));
+        assertEquals(64, rejected.status);
+    }
+}
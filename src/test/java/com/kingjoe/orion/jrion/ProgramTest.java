@@ -14,6 +14,7 @@ import java.io.PrintStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.Permission;
+import java.util.Arrays;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -490,6 +491,81 @@ class ProgramTest {
         assertEquals(expected.trim(), output);
     }
 
+    @Test
+    void testReturnFromNestedLoopsAndContinue() throws IOException {
+        //Given
+        String source = """
+                fun find(target) {
+                    for (var i = 1; i <= 3; i = i + 1) {
+                        var j = 0;
+                        while j < 3 {
+                            j = j + 1;
+                            if j == 2 {
+                                continue;
+                            }
+                            if i * j == target {
+                                return "(" + i + ", " + j + ")";
+                            }
+                        }
+                    }
+                    return "none";
+                }
+
+                println(find(3));
+                println(find(4));
+                println(find(9));
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                (1, 3)
+                none
+                (3, 3)
+                """;
+        assertEquals(expected.trim(), output);
+    }
+
+    @Test
+    void testTailCallsDoNotGrowTheStack() throws IOException {
+        //Given
+        String source = """
+                fun countDown(n, steps) {
+                    if n == 0 {
+                        return steps;
+                    }
+                    return countDown(n - 1, steps + 1);
+                }
+                fun isEven(n) {
+                    if n == 0 {
+                        return true;
+                    }
+                    return isOdd(n - 1);
+                }
+                fun isOdd(n) {
+                    if n == 0 {
+                        return false;
+                    }
+                    return isEven(n - 1);
+                }
+
+                println(countDown(200000, 0));
+                println(isEven(300001));
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                200000
+                false
+                """;
+        assertEquals(expected.trim(), output);
+    }
+
     @Test
     void testFunctions() throws IOException {
         //Given
@@ -775,6 +851,53 @@ class ProgramTest {
         assertTrue(error.contains(expected));
     }
 
+    @Test
+    void testParseErrorEndsWithCompileErrorStatus() throws Exception {
+        //Given
+        String source = """
+                println("never printed");
+                var missingSemicolon = 1
+                println(missingSemicolon);
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        assertEquals("", result.output);
+        assertTrue(result.error.contains("[line 3] Error at 'println'"));
+        assertEquals(65, result.status);
+    }
+
+    @Test
+    void testEngineSelection() throws Exception {
+        //Given
+        String source = """
+                fun square(n) {
+                    return n * n;
+                }
+                println(square(7));
+                """;
+
+        //When
+        Console tree = executeProgram(source, "--engine=tree");
+        Console tiered = executeProgram(source, "--engine=tiered");
+        Console jvm = executeProgram(source, "--engine=jvm");
+        Console node = executeProgram(source, "--engine=node");
+        Console vm = executeProgram(source, "--engine=vm");
+        Console histogramOnJvm = executeProgram(source, "--node-histogram", "--engine=jvm");
+
+        //Then
+        for (Console result : new Console[]{tree, tiered, jvm, node}) {
+            assertEquals("49", result.output);
+            assertEquals(0, result.status);
+        }
+        assertTrue(vm.output.startsWith("Usage: jrion [--engine=tree|tiered|jvm|node]"));
+        assertEquals(64, vm.status);
+        assertTrue(histogramOnJvm.output.startsWith("Usage: jrion"));
+        assertEquals(64, histogramOnJvm.status);
+    }
+
     @Test
     void testArrayDeclaration() throws Exception {
         //Given
@@ -1345,6 +1468,877 @@ class ProgramTest {
         assertEquals("[line 3] Error at 'super': 'super' can't be used in a class with no superclass.", error);
     }
 
+    @Test
+    void testGlobalsReferencedBeforeTheirDeclarationAndRedeclared() throws Exception {
+        //Given
+        String source = """
+                fun first() {
+                    return second() + counter;
+                }
+                fun second() {
+                    return 1;
+                }
+                var counter = 10;
+                println(first());
+                fun second() {
+                    return 100;
+                }
+                var counter = 20;
+                counter = counter + 1;
+                println(first());
+                println(undeclared);
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                11
+                121""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 15] Undefined variable 'undeclared'."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testClassesDeclaredInsideAFunction() throws Exception {
+        //Given
+        String source = """
+                fun shapes() {
+                    class Point {
+                        var x;
+                        var y;
+
+                        Point(x, y) {
+                            this.x = x;
+                            this.y = y;
+                        }
+
+                        sum() {
+                            return this.x + this.y;
+                        }
+                    }
+                    class Point3 < Point {
+                        Point3(x) {
+                            super(x, 1);
+                        }
+
+                        sum() {
+                            return super.sum() * 2;
+                        }
+                    }
+                    println(Point(4, 5).sum());
+                    println(Point3(7).sum());
+                }
+                shapes();
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                9
+                16""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testPropertyAccessSitesSeeingManyClasses() throws Exception {
+        //Given
+        String source = """
+                class Base {
+                    var size;
+                    name() {
+                        return "base";
+                    }
+                }
+                class A < Base {
+                    name() {
+                        return "a";
+                    }
+                }
+                class B < Base {}
+                class C < Base {
+                    name() {
+                        return "c";
+                    }
+                }
+                class D {
+                    var size;
+                    name() {
+                        return "d";
+                    }
+                }
+                class E < D {
+                    var name;
+                    E() {
+                        this.name = fun () {
+                            return "e";
+                        };
+                    }
+                }
+                var objects = [Base(), A(), B(), C(), D(), E(), A(), E()];
+                for (var i = 0; i < 8; i = i + 1) {
+                    var object = objects[i];
+                    object.size = i;
+                    println(object.name() + " " + object.size);
+                }
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                base 0
+                a 1
+                base 2
+                c 3
+                d 4
+                e 5
+                a 6
+                e 7""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testSuperClassFieldsSetInDifferentOrders() throws Exception {
+        //Given
+        String source = """
+                class Point {
+                    var x;
+                    var y;
+                }
+                class Pixel < Point {
+                    var _color;
+                    Pixel(color) {
+                        this.color = color;
+                    }
+                    describe() {
+                        return this.color + " " + this.x + " " + this.y;
+                    }
+                }
+                var first = Pixel("red");
+                first.x = 1;
+                first.y = 2;
+                var second = Pixel("blue");
+                second.y = 3;
+                second.x = 4;
+                var third = Pixel("green");
+                third.y = 5;
+                println(first.describe());
+                println(second.describe());
+                println(third.describe());
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                red 1 2
+                blue 4 3
+                green nil 5""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testMethodsCalledDirectlyAndTakenAsValues() throws Exception {
+        //Given
+        String source = """
+                class Greeter {
+                    var name;
+                    var shout;
+                    Greeter(name) {
+                        this.name = name;
+                        this.shout = fun (text) {
+                            return text + "!";
+                        };
+                    }
+                    greet(other) {
+                        return this.prefix() + other + ", I am " + this.name;
+                    }
+                    _prefix() {
+                        return "Hi ";
+                    }
+                }
+                var greeter = Greeter("Ada");
+                var greet = greeter.greet;
+                greeter.name = "Grace";
+                println(greeter.greet("Alan"));
+                println(greet("Linus"));
+                println(greeter.shout("hey"));
+                var numbers = [1, 2, 3];
+                println(numbers.length());
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                Hi Alan, I am Grace
+                Hi Linus, I am Grace
+                hey!
+                3""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testPrivateFieldsAreOnlyAccessibleOnTheReceiver() throws Exception {
+        //Given
+        String source = """
+                class Account {
+                    var _balance;
+                    Account(balance) {
+                        this.balance = balance;
+                    }
+                    total() {
+                        var add = fun (amount) {
+                            return this.balance + amount;
+                        };
+                        return add(1);
+                    }
+                    peek(other) {
+                        return other.balance;
+                    }
+                }
+                var account = Account(10);
+                println(account.total());
+                println(account.peek(account));
+                println(account.peek(Account(5)));
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                11
+                10""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 13] field 'balance' is private in class 'Account'."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testMethodsInheritedThroughADeepHierarchy() throws Exception {
+        //Given
+        String source = """
+                class A {
+                    name() {
+                        return "a";
+                    }
+                    greet() {
+                        return "hello from " + this.name();
+                    }
+                }
+                class B < A {}
+                class C < B {
+                    name() {
+                        return "c";
+                    }
+                }
+                class D < C {}
+                class E < D {
+                    parent() {
+                        return super.name();
+                    }
+                }
+                println(B().greet());
+                println(E().greet());
+                println(E().parent());
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                hello from a
+                hello from c
+                c""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testParametersLocalsAndReceiverShareTheCallFrame() throws Exception {
+        //Given
+        String source = """
+                fun shadow(x) {
+                    println(x);
+                    var x = 10;
+                    return x + 1;
+                }
+                class Scaled {
+                    var factor;
+
+                    Scaled(factor) {
+                        this.factor = factor;
+                    }
+
+                    apply(value) {
+                        var offset = 2;
+                        var scale = fun (m) { return this.factor * m + offset; };
+                        return scale(value);
+                    }
+                }
+                println(shadow(3));
+                println(Scaled(4).apply(5));
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                3
+                11
+                22""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testIntegersBehaveLikeTheDoublesTheyStandFor() throws Exception {
+        //Given
+        String source = """
+                fun run() {
+                    var counter = 2147483646;
+                    for (var i = 0; i < 3; i = i + 1) {
+                        counter = counter + 1;
+                    }
+                    println(counter);
+                    println(65536 * 65536);
+                    println(0 * -5);
+                    println(-4 % 2);
+                    println(-7 % 3);
+                    println(7 / 2);
+                    println(6 / 3);
+                    println(12345678);
+                    println(1 == 1.0);
+                    println(0 == 0 * -1);
+                    var keys = {1: "one", 2.0: "two"};
+                    println(keys[4 / 2] + keys[0.5 * 2]);
+                    var values = [10, 20, 30];
+                    println(values[1.0] + values[6 / 3]);
+                }
+                run();
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                2.147483649
+                4.294967296
+                -0
+                -0
+                -1
+                3.5
+                2
+                1.2345678
+                true
+                false
+                twoone
+                50""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testCallsOfEveryArityAndArityChangesAtASite() throws Exception {
+        //Given
+        String source = """
+                fun zero() { return "0"; }
+                fun one(a) { return a; }
+                fun two(a, b) { return a + b; }
+                fun three(a, b, c) { return a + b + c; }
+                fun four(a, b, c, d) { return a + b + c + d; }
+                fun five(a, b, c, d, e) { return a + b + c + d + e; }
+                class Point {
+                    var x;
+                    var y;
+                    Point(x, y) {
+                        this.x = x;
+                        this.y = y;
+                    }
+                    moved(dx, dy, dz) {
+                        return Point(this.x + dx, this.y + dy + dz);
+                    }
+                }
+                println(zero() + one("1") + two("2", "3") + three("4", "5", "6") + four("7", "8", "9", "a") + five("b", "c", "d", "e", "f"));
+                var p = Point(1, 2).moved(3, 4, 5);
+                println(p.x + p.y);
+                var values = [1, 2, 3];
+                println(values.length());
+                var m = {"k": 1};
+                println(m.containsKey("k"));
+                var f = one;
+                for (var i = 0; i < 3; i = i + 1) {
+                    println(f(i));
+                    if (i == 1) {
+                        f = two;
+                    }
+                }
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                0123456789abcdef
+                15
+                3
+                true
+                0
+                1""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 27] Expected 2 arguments, but got 1"));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testNativeFunctionsConvertTheirArguments() throws Exception {
+        //Given
+        String source = """
+                fun show(x) {
+                    return println(x);
+                }
+                show(16);
+                println(show(2.25));
+                println(println);
+                var values = [print];
+                values[0]("done");
+                println(1, 2);
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                16
+                2.25
+                nil
+                <native fn println>
+                done""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 9] Expected 1 arguments, but got 2"));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testConstantExpressionsAndDeadBranches() throws Exception {
+        //Given
+        String source = """
+                var debug = false;
+                fun area(r) {
+                    if (false) {
+                        println("never");
+                    }
+                    return 3 * (2 + 1.5) * r * r;
+                    println("unreachable");
+                }
+                fun first(values) {
+                    for (var i = 0; ; i = i + 1) {
+                        if (values[i] > 2 * 2) {
+                            return values[i];
+                        }
+                    }
+                }
+                println(area(2));
+                println(first([1, 5, 9]));
+                println(-(7 - 10) + 2147483647);
+                println(7 / 2 * 2 + 10 % 4);
+                println("a" + 1 + 2 + true + nil);
+                println(!nil and (1 < 2 or 1 / 0));
+                println(0 * -1 == 0);
+                while (1 > 2) {
+                    println("never");
+                }
+                if (debug or false) {
+                    println("debug");
+                } else {
+                    println("no debug");
+                }
+                println(1 / 0);
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                42
+                5
+                2.14748365
+                9
+                a12truenil
+                true
+                false
+                no debug""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 31] Invalid operation, division by zero."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testLoopInvariantsAndInductionVariables() throws Exception {
+        //Given
+        String source = """
+                fun table(n) {
+                    var cells = [0] * (n * 3);
+                    for (var i = 0; i < n * 3 / 3; i = i + 1) {
+                        cells[i * 3] = i;
+                        cells[3 * i + 1] = i * 3;
+                        cells[i * 3 + 2] = i * 2;
+                    }
+                    return cells;
+                }
+                fun shrinking(n) {
+                    var limit = n;
+                    var shrink = fun () { limit = limit - 1; };
+                    var count = 0;
+                    for (var i = 0; i < limit * 2; i = i + 1) {
+                        shrink();
+                        count = count + 1;
+                    }
+                    return count;
+                }
+                fun grid(rows, columns) {
+                    var sum = 0;
+                    for (var r = 0; r < rows; r = r + 1) {
+                        for (var c = 0; c < columns - 1; c = c + 1) {
+                            sum = sum + r * 100 + c * 2;
+                        }
+                    }
+                    return sum;
+                }
+                fun wide() {
+                    var last = 0;
+                    for (var i = 2147483645; i < 2147483649; i = i + 2) {
+                        last = i * 2;
+                        println(last);
+                    }
+                    var down = 0;
+                    for (var j = 3; j > -3; j = j + -1) {
+                        down = down + j * 5;
+                    }
+                    return down;
+                }
+                println(table(3));
+                println(shrinking(10));
+                println(grid(3, 4));
+                println(wide());
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                [0, 0, 0, 1, 3, 2, 2, 6, 4]
+                7
+                918
+                4.29496729
+                4.294967294
+                15""";
+        assertEquals(expected, output);
+    }
+
+    static final String HOISTING_SOURCE = """
+            class Sized {
+                var calls;
+                Sized() { this.calls = 0; }
+                length() { this.calls = this.calls + 1; return 3; }
+            }
+            fun total(nums, scale, offset) {
+                var sum = 0;
+                for (var i = 0; i < nums.length(); i = i + 1) {
+                    sum = sum + nums[i] * (scale + offset * 2);
+                }
+                return sum;
+            }
+            fun walk(sized) {
+                var n = 0;
+                while (n < sized.length()) {
+                    n = n + 1;
+                }
+                return n;
+            }
+            fun show(cells) {
+                for (var i = 0; i < 2; i = i + 1) {
+                    cells[0] = i;
+                    println("cells " + cells + "!");
+                }
+            }
+            var sized = Sized();
+            println(total([1, 2, 3], 2, 1));
+            println(walk(sized));
+            println(sized.calls);
+            show([0, 9]);
+            """;
+
+    static final String HOISTING_OUTPUT = """
+            24
+            3
+            4
+            cells [0, 9]!
+            cells [1, 9]!""";
+
+    @Test
+    void testLoopInvariantExpressionsAreHoisted() throws Exception {
+        //Given
+        String source = HOISTING_SOURCE;
+
+        //When
+        String output = executeProgram(source, "--dump-types").output;
+
+        //Then
+        assertTrue(output.contains("[line 8] hoisted nums.length(): any\n"));
+        assertTrue(output.contains("[line 8] hoisted (scale + offset * 2): any\n"));
+        // a concatenation with a string can never be kept, so it stays in the loop
+        assertFalse(output.contains("hoisted \"cells \""));
+        assertTrue(output.endsWith(HOISTING_OUTPUT));
+    }
+
+    @Test
+    void testInlinedFunctionCalls() throws Exception {
+        //Given
+        String source = """
+                fun square(x) { return x * x; }
+                fun add(a, b) { return a + b; }
+                fun sumOfSquares(a, b) { return add(square(a), square(b)); }
+                fun fact(n) { if (n < 2) { return 1; } return n * fact(n - 1); }
+                fun noisy(x) { println("argument " + x); return x; }
+                fun two() { return 2; }
+                fun three() { return 3; }
+                fun outer(x) { return square(x); }
+                var total = 0;
+                for (var i = 0; i < 5; i = i + 1) {
+                    total = total + sumOfSquares(i, i + 1) + square(i) * two();
+                }
+                println(total);
+                println(add(noisy(1), noisy(2)));
+                for (var i = 0; i < 3; i = i + 1) {
+                    println(two());
+                    if (i == 1) {
+                        two = three;
+                    }
+                }
+                println(outer(7));
+                println(fact(5));
+                println(add("a", "b"));
+                {
+                    var x = 1;
+                    println(add(square(x + 1), x));
+                }
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                145
+                argument 1
+                argument 2
+                3
+                2
+                2
+                3
+                49
+                120
+                ab
+                5""";
+        assertEquals(expected, output);
+    }
+
+    @Test
+    void testOperationsOnInferredTypes() throws Exception {
+        //Given
+        String source = """
+                fun changing(n) {
+                    var value = 1;
+                    var log = "";
+                    var i = 0;
+                    while (i < n) {
+                        i = i + 1;
+                        log = log + (value + 1) + ",";
+                        if (i == 1) {
+                            value = "one";
+                        }
+                        if (i == 2) {
+                            value = 2.5;
+                            continue;
+                        }
+                        if (i == 3) {
+                            break;
+                        }
+                    }
+                    return log;
+                }
+                fun captured() {
+                    var count = 1;
+                    var log = "";
+                    var bump = fun () { count = "many"; };
+                    for (var i = 0; i < 2; i = i + 1) {
+                        log = log + (count + 1) + ",";
+                        bump();
+                    }
+                    return log;
+                }
+                fun shortCircuit(flag) {
+                    var x = 1;
+                    if (flag and (x = "set")) {
+                        x = x + "!";
+                    }
+                    return x + 1;
+                }
+                fun mixed() {
+                    var half = 0.5;
+                    var whole = 2;
+                    return half * whole + whole / 4 - 7 % whole;
+                }
+                println(changing(5));
+                println(captured());
+                println(shortCircuit(false));
+                println(shortCircuit(true));
+                println(mixed());
+                println("total: " + nil + " " + 1.5 + " " + true);
+                fun zero() {
+                    var a = 1;
+                    var b = 0;
+                    return a / b;
+                }
+                println(zero());
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                2,one1,3.5,
+                2,many1,
+                2
+                set!1
+                0.5
+                total: nil 1.5 true""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 52] Invalid operation, division by zero."));
+        assertEquals(70, result.status);
+    }
+
+    @Test
+    void testStringConcatenationAndAppendingInLoops() throws Exception {
+        //Given
+        String source = """
+                fun build(n) {
+                    var s = "";
+                    for (var i = 0; i < n; i = i + 1) {
+                        s = s + i + ",";
+                        if (i % 2 == 0) {
+                            s = s + "e";
+                        }
+                    }
+                    return s;
+                }
+                fun numbers(n) {
+                    var s = 0;
+                    var i = 0;
+                    while (i < n) {
+                        i = i + 1;
+                        s = s + i + "|";
+                    }
+                    return s;
+                }
+                fun never() {
+                    var s = 5;
+                    for (var i = 0; i < 0; i = i + 1) {
+                        s = s + "x";
+                    }
+                    return s;
+                }
+                fun early(n) {
+                    var s = "";
+                    for (var i = 0; i < n; i = i + 1) {
+                        s = s + i;
+                        if (i == 3) {
+                            break;
+                        }
+                    }
+                    return s;
+                }
+                fun closure(n) {
+                    var s = "";
+                    var get = fun () { return s; };
+                    for (var i = 0; i < n; i = i + 1) {
+                        s = s + i;
+                    }
+                    return get();
+                }
+                fun copies(n) {
+                    var s = "a";
+                    var kept = s;
+                    for (var i = 0; i < n; i = i + 1) {
+                        s = s + "b";
+                    }
+                    return kept + " " + s;
+                }
+                fun nested(n) {
+                    var s = "";
+                    for (var i = 0; i < n; i = i + 1) {
+                        for (var j = 0; j < n; j = j + 1) {
+                            s = s + i + j + " ";
+                        }
+                        s = s + "/";
+                    }
+                    return s;
+                }
+                fun chain(x) {
+                    var text = "x";
+                    return 1 + 2 + text + x + 0.5 + nil + true + (1 + 2);
+                }
+                fun broken() {
+                    var s = nil;
+                    for (var i = 0; i < 2; i = i + 1) {
+                        s = s + 1;
+                    }
+                    return s;
+                }
+                println(build(5));
+                println(numbers(4));
+                println(never());
+                println(early(10));
+                println(closure(3));
+                println(copies(2));
+                println(nested(3));
+                println(chain(4));
+                println(broken());
+                """;
+
+        //When
+        Console result = executeProgram(source);
+
+        //Then
+        String expected = """
+                0,e1,2,e3,4,e
+                1|2|3|4|
+                5
+                0123
+                012
+                a abb
+                00 01 02 /10 11 12 /20 21 22 /
+                3x40.5niltrue3""";
+        assertEquals(expected, result.output);
+        assertTrue(result.error.contains("[line 70] cannot perform  '+' operation on the provided type"));
+        assertEquals(70, result.status);
+    }
+
     @Test
     void executePrograms() throws Exception {
         Path path = Paths.get(pathToPrograms);
@@ -1386,11 +2380,11 @@ class ProgramTest {
         ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
         System.setOut(new PrintStream(new CustomOutputStream(originalOutputStream, outputStream)));
 
-        String[] args = {sourceFile.toAbsolutePath().toString()};
+        String[] args = arguments(sourceFile);
 
         //When
         try {
-            Rion.main(args);
+            Rion.execute(args);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -1414,7 +2408,22 @@ class ProgramTest {
     @TempDir
     private static Path tempDir;
 
-    private Console executeProgram(String source) throws IOException {
+    /*
+     * command line options the programs are executed with, subclasses override this to run the whole suite on another engine.
+     */
+    protected String[] options() {
+        return new String[0];
+    }
+
+    private String[] arguments(Path sourceFile, String... extraOptions) {
+        String[] options = options();
+        String[] args = Arrays.copyOf(options, options.length + extraOptions.length + 1);
+        System.arraycopy(extraOptions, 0, args, options.length, extraOptions.length);
+        args[args.length - 1] = sourceFile.toAbsolutePath().toString();
+        return args;
+    }
+
+    Console executeProgram(String source, String... extraOptions) throws IOException {
         PrintStream originalOutputStream = System.out;
         PrintStream originalErrorStream = System.out;
         
@@ -1428,10 +2437,12 @@ class ProgramTest {
         Path sourceFile = Files.createTempFile(tempDir, "source_", ".jrion");
         Files.writeString(sourceFile, source);
 
-        String[] args = {sourceFile.toAbsolutePath().toString()};
+        String[] args = arguments(sourceFile, extraOptions);
 
+        // a program ending in an error makes main exit the jvm, execute only returns the status it would exit with
+        int status = -1;
         try {
-            Rion.main(args);
+            status = Rion.execute(args);
         } catch (Exception e) {
             e.printStackTrace();
         } finally {
@@ -1439,7 +2450,7 @@ class ProgramTest {
             System.setErr(originalErrorStream);
         }
 
-        return new Console(outputStream.toString().trim(), errorStream.toString().trim());
+        return new Console(outputStream.toString().trim(), errorStream.toString().trim(), status);
     }
     
 
@@ -1450,9 +2461,11 @@ class ProgramTest {
     static class Console {
         String output;
         String error;
-        public Console(String output, String error) {
+        int status;
+        public Console(String output, String error, int status) {
             this.output = output;
             this.error = error;
+            this.status = status;
         }
     }
 
@@ -81,7 +81,7 @@ class ScannerTest {
         //Then
         assertEquals(3, tokens.size());
         assertEquals(TokenType.NUMBER, tokens.get(0).type);
-        assertEquals(123.0, tokens.get(0).literal);
+        assertEquals(123, tokens.get(0).literal);
         assertEquals(TokenType.NUMBER, tokens.get(1).type);
         assertEquals(456.789, tokens.get(1).literal);
     }
@@ -0,0 +1,50 @@
+package com.kingjoe.orion.jrion;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/*
+ * Runs every program of the suite with tiering enabled, functions start in the interpreter and are compiled to jvm
+ * bytecode once hot.
+ */
+class TieredProgramTest extends ProgramTest {
+
+    @Override
+    protected String[] options() {
+        return new String[]{"--engine=tiered"};
+    }
+
+    @Test
+    void testHotFunctionsKeepTheirBehaviourAfterBeingCompiled() throws IOException {
+        //Given
+        String source = """
+                fun fib(n) {
+                    if (n < 2) {
+                        return n;
+                    }
+                    return fib(n - 1) + fib(n - 2);
+                }
+                fun makeAdder(n) {
+                    return fun (x) { return x + n; };
+                }
+                var total = 0;
+                for (var i = 0; i < 3000; i = i + 1) {
+                    total = makeAdder(i)(total);
+                }
+                println(fib(20));
+                println(total);
+                """;
+
+        //When
+        String output = executeProgram(source).output;
+
+        //Then
+        String expected = """
+                6765
+                4498500""";
+        assertEquals(expected, output);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kingjoe.orion.jrion;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Runs every program of the suite without the Optimizer, which must not change what any of them prints.
+ */
+class UnoptimizedProgramTest extends ProgramTest {
+
+    @Override
+    protected String[] options() {
+        return new String[]{"--no-opt"};
+    }
+
+    @Test
+    @Override
+    void testLoopInvariantExpressionsAreHoisted() throws Exception {
+        //Given
+        String source = HOISTING_SOURCE;
+
+        //When
+        String output = executeProgram(source, "--dump-types").output;
+
+        //Then
+        assertFalse(output.contains("hoisted"));
+        assertTrue(output.endsWith(HOISTING_OUTPUT));
+    }
+}